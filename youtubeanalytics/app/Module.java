@@ -0,0 +1,17 @@
+import com.google.inject.AbstractModule;
+import play.cache.AsyncCacheApi;
+import services.TieredAsyncCache;
+
+/**
+ * Guice module binding the application's own implementations.
+ * Play loads a class named Module in the root package automatically.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class Module extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        bind(AsyncCacheApi.class).to(TieredAsyncCache.class);
+    }
+}
@@ -0,0 +1,152 @@
+package controllers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+/**
+ * HTTP validators and caching headers for pages and JSON endpoints.
+ * The ETag is derived from the version of the data a response is rendered from, so a
+ * conditional request can be answered with 304 Not Modified before anything is rendered.
+ * ETags are weak, as fields such as the age of the data may differ between two renderings
+ * of the same version.
+ *
+ * @author Mohnish Mirchandani
+ */
+final class HttpCaching {
+
+	private HttpCaching() {}
+
+	/**
+	 * Computes a weak ETag for a version of the underlying data.
+	 *
+	 * @param representation Names the representation, e.g. "search" or "wordstats".
+	 * @param version The data version, e.g. an upstream ETag or the data itself.
+	 * @return The quoted ETag.
+	 * @author Mohnish Mirchandani
+	 */
+	static String etag(String representation, String version) {
+		try {
+			byte[] digest = MessageDigest
+				.getInstance("SHA-256")
+				.digest(
+					(representation + ":" + version).getBytes(StandardCharsets.UTF_8)
+				);
+			StringBuilder hex = new StringBuilder("W/\"");
+			for (int i = 0; i < 12; i++) {
+				hex.append(String.format("%02x", digest[i]));
+			}
+			return hex.append('"').toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	/**
+	 * Checks whether the client already holds the current version. If-None-Match takes
+	 * precedence; If-Modified-Since is only used when no If-None-Match is sent.
+	 *
+	 * @param request The incoming request.
+	 * @param etag The current ETag.
+	 * @param lastModified The refresh time of the data in epoch milliseconds, or 0 if unknown.
+	 * @return True if the request can be answered with 304 Not Modified.
+	 * @author Mohnish Mirchandani
+	 */
+	static boolean isNotModified(Http.Request request, String etag, long lastModified) {
+		Optional<String> ifNoneMatch = request
+			.getHeaders()
+			.get(Http.HeaderNames.IF_NONE_MATCH);
+		if (ifNoneMatch.isPresent()) {
+			String opaqueTag = opaque(etag);
+			for (String candidate : ifNoneMatch.get().split(",")) {
+				String tag = opaque(candidate.trim());
+				if (tag.equals("*") || tag.equals(opaqueTag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		Optional<String> ifModifiedSince = request
+			.getHeaders()
+			.get(Http.HeaderNames.IF_MODIFIED_SINCE);
+		if (ifModifiedSince.isPresent() && lastModified > 0) {
+			try {
+				long since = ZonedDateTime
+					.parse(ifModifiedSince.get(), DateTimeFormatter.RFC_1123_DATE_TIME)
+					.toInstant()
+					.toEpochMilli();
+				return lastModified / 1000 <= since / 1000;
+			} catch (DateTimeParseException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Strips the weakness indicator, as If-None-Match uses the weak comparison.
+	 */
+	private static String opaque(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	/**
+	 * Builds the 304 Not Modified answer, carrying the same validators as a full response.
+	 *
+	 * @param etag The current ETag.
+	 * @param lastModified The refresh time of the data in epoch milliseconds, or 0 if unknown.
+	 * @param maxAgeSeconds How long browsers and proxies may reuse the response.
+	 * @return The 304 result.
+	 * @author Mohnish Mirchandani
+	 */
+	static Result notModified(String etag, long lastModified, long maxAgeSeconds) {
+		return withValidators(
+			Results.status(Http.Status.NOT_MODIFIED),
+			etag,
+			lastModified,
+			maxAgeSeconds
+		);
+	}
+
+	/**
+	 * Adds ETag, Last-Modified and Cache-Control to a result.
+	 *
+	 * @param result The rendered result.
+	 * @param etag The current ETag.
+	 * @param lastModified The refresh time of the data in epoch milliseconds, or 0 if unknown.
+	 * @param maxAgeSeconds How long browsers and proxies may reuse the response.
+	 * @return The result with caching headers.
+	 * @author Mohnish Mirchandani
+	 */
+	static Result withValidators(
+		Result result,
+		String etag,
+		long lastModified,
+		long maxAgeSeconds
+	) {
+		Result cached = result
+			.withHeader(Http.HeaderNames.ETAG, etag)
+			.withHeader(
+				Http.HeaderNames.CACHE_CONTROL,
+				"public, max-age=" + Math.max(0, maxAgeSeconds)
+			);
+		if (lastModified > 0) {
+			cached = cached.withHeader(
+				Http.HeaderNames.LAST_MODIFIED,
+				DateTimeFormatter.RFC_1123_DATE_TIME.format(
+					Instant.ofEpochMilli(lastModified).atZone(ZoneOffset.UTC)
+				)
+			);
+		}
+		return cached;
+	}
+}
@@ -0,0 +1,79 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import javax.inject.Inject;
+import play.libs.Json;
+import play.mvc.Controller;
+import play.mvc.Result;
+import services.CachePolicy;
+import services.QueryNormalizer;
+import services.SingleFlight;
+import services.TieredAsyncCache;
+import services.VideoIndex;
+import services.YoutubeApiClient;
+
+/**
+ * Controller exposing runtime statistics of the application as JSON.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class MetricsController extends Controller {
+
+	private final TieredAsyncCache cache;
+	private final CachePolicy cachePolicy;
+	private final SingleFlight singleFlight;
+	private final YoutubeApiClient apiClient;
+	private final YoutubeController youtubeController;
+	private final VideoIndex videoIndex;
+	private final QueryNormalizer queryNormalizer;
+
+	/**
+	 * Constructor for MetricsController.
+	 *
+	 * @param cache The tiered cache backing the AsyncCacheApi.
+	 * @param cachePolicy The policy applied to cached API responses.
+	 * @param singleFlight The request coalescer.
+	 * @param apiClient The YouTube Data API client.
+	 * @param youtubeController The controller serving the searches.
+	 * @param videoIndex The inverted index over fetched videos.
+	 * @param queryNormalizer The canonicalizer of search queries.
+	 * @author Mohnish Mirchandani
+	 */
+	@Inject
+	public MetricsController(
+		TieredAsyncCache cache,
+		CachePolicy cachePolicy,
+		SingleFlight singleFlight,
+		YoutubeApiClient apiClient,
+		YoutubeController youtubeController,
+		VideoIndex videoIndex,
+		QueryNormalizer queryNormalizer
+	) {
+		this.cache = cache;
+		this.cachePolicy = cachePolicy;
+		this.singleFlight = singleFlight;
+		this.apiClient = apiClient;
+		this.youtubeController = youtubeController;
+		this.videoIndex = videoIndex;
+		this.queryNormalizer = queryNormalizer;
+	}
+
+	/**
+	 * Renders the current statistics.
+	 *
+	 * @return The statistics as a JSON response.
+	 * @author Mohnish Mirchandani
+	 */
+	public Result metrics() {
+		ObjectNode metrics = Json.newObject();
+		metrics.set("cache", cache.stats());
+		metrics.set("cachePolicy", cachePolicy.stats());
+		metrics.set("coalescing", singleFlight.stats());
+		ObjectNode youtubeApi = apiClient.stats();
+		youtubeApi.put("reanalysisSkipped", youtubeController.getReanalysisSkipped());
+		metrics.set("youtubeApi", youtubeApi);
+		metrics.set("videoIndex", videoIndex.stats());
+		metrics.set("queryNormalization", queryNormalizer.stats());
+		return ok(metrics);
+	}
+}
@@ -0,0 +1,154 @@
+package models;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.Serializable;
+import play.libs.Json;
+import play.libs.ws.WSResponse;
+
+/**
+ * Model class representing a cached YouTube Data API response.
+ * Only the status, the body and the ETag are kept, so the response can be serialized and
+ * compressed by the cache instead of holding on to the whole WSResponse.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class YoutubeApiResponse implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+    private final String body;
+    private final long fetchedAt;
+    private final String etag;
+    private final boolean notModified;
+
+    /**
+     * Constructor for YoutubeApiResponse.
+     *
+     * @param status The HTTP status of the response.
+     * @param body The raw response body.
+     * @param fetchedAt The time the response was received, in epoch milliseconds.
+     * @author Mohnish Mirchandani
+     */
+    public YoutubeApiResponse(int status, String body, long fetchedAt) {
+        this(status, body, fetchedAt, null, false);
+    }
+
+    /**
+     * Constructor for YoutubeApiResponse.
+     *
+     * @param status The HTTP status of the response.
+     * @param body The raw response body.
+     * @param fetchedAt The time the response was received, in epoch milliseconds.
+     * @param etag The ETag of the response, or null if it has none.
+     * @param notModified Whether the body was reused after a 304 Not Modified.
+     * @author Mohnish Mirchandani
+     */
+    public YoutubeApiResponse(
+        int status,
+        String body,
+        long fetchedAt,
+        String etag,
+        boolean notModified
+    ) {
+        this.status = status;
+        this.body = body;
+        this.fetchedAt = fetchedAt;
+        this.etag = etag;
+        this.notModified = notModified;
+    }
+
+    /**
+     * Creates a YoutubeApiResponse from a WSResponse.
+     *
+     * @param response The response returned by the WSClient.
+     * @return The detached response.
+     * @author Mohnish Mirchandani
+     */
+    public static YoutubeApiResponse from(WSResponse response) {
+        return new YoutubeApiResponse(
+            response.getStatus(),
+            response.getBody(),
+            System.currentTimeMillis(),
+            response.getSingleHeader("ETag").orElse(null),
+            false
+        );
+    }
+
+    /**
+     * Creates a copy of this response confirmed unchanged by a 304 Not Modified.
+     *
+     * @return The same status, body and ETag, fetched now and marked as not modified.
+     * @author Mohnish Mirchandani
+     */
+    public YoutubeApiResponse revalidated() {
+        return new YoutubeApiResponse(
+            status,
+            body,
+            System.currentTimeMillis(),
+            etag,
+            true
+        );
+    }
+
+    /**
+     * Gets the HTTP status of the response.
+     *
+     * @return The HTTP status.
+     * @author Mohnish Mirchandani
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the raw response body.
+     *
+     * @return The response body.
+     * @author Mohnish Mirchandani
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Gets the time the response was received.
+     *
+     * @return The fetch time in epoch milliseconds.
+     * @author Mohnish Mirchandani
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * Gets the ETag of the response.
+     *
+     * @return The ETag, or null if the response has none.
+     * @author Mohnish Mirchandani
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Checks whether the body was reused after a 304 Not Modified.
+     *
+     * @return True if the upstream resource did not change.
+     * @author Mohnish Mirchandani
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * Parses the body as JSON. Every call returns a fresh tree, so callers may
+     * modify it without affecting the cached response.
+     *
+     * @return The response body as a JsonNode.
+     * @author Mohnish Mirchandani
+     */
+    public JsonNode asJson() {
+        return Json.parse(body);
+    }
+}
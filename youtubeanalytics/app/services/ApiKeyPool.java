@@ -0,0 +1,192 @@
+package services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigValueType;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import play.libs.Json;
+
+/**
+ * The YouTube Data API keys configured under {@code youtube.api.keys}, each with its own
+ * daily quota. A request is sent with a key picked at random, weighted by the quota it has
+ * left today, so the keys run out together and every added key adds its daily units. A key
+ * the API answered 403 quotaExceeded for is quarantined until the quota resets.
+ *
+ * @author Mohnish Mirchandani
+ */
+class ApiKeyPool {
+
+    private final List<ApiKey> keys;
+
+    /**
+     * Constructor for ApiKeyPool.
+     *
+     * @param config The application configuration, read from {@code youtube.api.keys} and
+     *               {@code youtube.api.quota.daily-units}.
+     * @throws ConfigException if no keys are configured.
+     * @author Mohnish Mirchandani
+     */
+    ApiKeyPool(Config config) {
+        this(
+            keys(config),
+            config.getLong("youtube.api.quota.daily-units"),
+            Clock.system(QuotaTracker.QUOTA_ZONE)
+        );
+    }
+
+    /**
+     * Reads the keys from a list, or from a comma-separated string as set by the
+     * YOUTUBE_API_KEYS environment variable.
+     */
+    private static List<String> keys(Config config) {
+        List<String> keys = new ArrayList<>();
+        if (config.getValue("youtube.api.keys").valueType() == ConfigValueType.STRING) {
+            for (String key : config.getString("youtube.api.keys").split(",")) {
+                if (!key.trim().isEmpty()) {
+                    keys.add(key.trim());
+                }
+            }
+        } else {
+            keys.addAll(config.getStringList("youtube.api.keys"));
+        }
+        if (keys.isEmpty()) {
+            throw new ConfigException.BadValue("youtube.api.keys", "at least one YouTube Data API key is required");
+        }
+        return keys;
+    }
+
+    /**
+     * Constructor for ApiKeyPool.
+     *
+     * @param keys The API keys.
+     * @param dailyUnits The quota units of each key per day.
+     * @param clock The clock the quota day is read from.
+     * @author Mohnish Mirchandani
+     */
+    ApiKeyPool(List<String> keys, long dailyUnits, Clock clock) {
+        List<ApiKey> pool = new ArrayList<>();
+        for (String key : keys) {
+            pool.add(new ApiKey(key, new QuotaTracker(dailyUnits, clock)));
+        }
+        this.keys = Collections.unmodifiableList(pool);
+    }
+
+    /**
+     * Picks a key with quota left, weighted by the units it has left today.
+     *
+     * @return The key, or null if every key is out of quota.
+     * @author Mohnish Mirchandani
+     */
+    ApiKey acquire() {
+        long total = 0;
+        long[] remaining = new long[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            remaining[i] = keys.get(i).quota.remainingUnits();
+            total += remaining[i];
+        }
+        if (total == 0) {
+            return null;
+        }
+        long pick = ThreadLocalRandom.current().nextLong(total);
+        for (int i = 0; i < keys.size(); i++) {
+            pick -= remaining[i];
+            if (pick < 0) {
+                return keys.get(i);
+            }
+        }
+        return keys.get(keys.size() - 1);
+    }
+
+    /**
+     * Checks whether a response is the API reporting the quota of its key as exceeded.
+     *
+     * @param status The HTTP status of the response.
+     * @param body The body of the response, or null.
+     * @return True for a 403 with the reason quotaExceeded or dailyLimitExceeded.
+     * @author Mohnish Mirchandani
+     */
+    static boolean isQuotaExceeded(int status, JsonNode body) {
+        if (status != 403 || body == null) {
+            return false;
+        }
+        for (JsonNode error : body.path("error").path("errors")) {
+            String reason = error.path("reason").asText();
+            if ("quotaExceeded".equals(reason) || "dailyLimitExceeded".equals(reason)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the units spent and left today and the quarantines per key. Keys are shown by
+     * their last four characters only.
+     *
+     * @return The statistics as JSON.
+     * @author Mohnish Mirchandani
+     */
+    ObjectNode stats() {
+        ObjectNode json = Json.newObject();
+        for (ApiKey key : keys) {
+            ObjectNode keyJson = key.quota.stats();
+            keyJson.put("requests", key.requests.get());
+            keyJson.put("quarantined", key.quota.remainingUnits() == 0);
+            keyJson.put("quarantines", key.quarantines.get());
+            json.set(key.label(), keyJson);
+        }
+        return json;
+    }
+
+    /**
+     * An API key with the quota it has spent today.
+     */
+    static final class ApiKey {
+
+        final String value;
+        final QuotaTracker quota;
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong quarantines = new AtomicLong();
+
+        ApiKey(String value, QuotaTracker quota) {
+            this.value = value;
+            this.quota = quota;
+        }
+
+        void spend(String path) {
+            requests.incrementAndGet();
+            quota.spend(path);
+        }
+
+        /**
+         * Takes the key out of rotation until its quota resets.
+         */
+        void quarantine() {
+            quarantines.incrementAndGet();
+            quota.exhaust();
+        }
+
+        String label() {
+            return "..." + value.substring(Math.max(0, value.length() - 4));
+        }
+    }
+
+    /**
+     * Signals a request that was not sent because every key is out of quota for today and
+     * no earlier response could be served instead.
+     */
+    static final class QuotaExhaustedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        QuotaExhaustedException(String path) {
+            super("Every API key is out of quota before " + path);
+        }
+    }
+}
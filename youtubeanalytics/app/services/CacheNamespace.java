@@ -0,0 +1,41 @@
+package services;
+
+/**
+ * Namespaces of the application cache. Each namespace has its own key prefix and TTL,
+ * so that search results, video details and channel data never share a key space.
+ *
+ * @author Mohnish Mirchandani
+ */
+public enum CacheNamespace {
+    SEARCH("search"),
+    VIDEO("video"),
+    CHANNEL("channel"),
+    TAG("tag");
+
+    private final String prefix;
+
+    CacheNamespace(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Gets the configuration name and key prefix of the namespace.
+     *
+     * @return The namespace prefix.
+     * @author Mohnish Mirchandani
+     */
+    public String prefix() {
+        return prefix;
+    }
+
+    /**
+     * Builds the cache key of an entry in this namespace.
+     *
+     * @param key The key within the namespace, e.g. a query or a video id.
+     * @return The namespaced cache key.
+     * @author Mohnish Mirchandani
+     */
+    public String key(String key) {
+        return prefix + ":" + key;
+    }
+}
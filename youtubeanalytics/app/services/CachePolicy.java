@@ -0,0 +1,278 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.typesafe.config.Config;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import models.YoutubeApiResponse;
+import play.cache.AsyncCacheApi;
+import play.libs.Json;
+
+/**
+ * Caching rules for YouTube Data API responses.
+ * Entries are stored under a typed namespace with a TTL chosen by namespace and response
+ * status: successful responses use the namespace TTL, quota errors and server errors are
+ * kept only briefly. Hot entries close to expiry are reloaded in the background.
+ * Successful responses past their (soft) TTL are still served, marked stale, until their
+ * stale (hard) TTL while a single background refresh replaces them.
+ *
+ * @author Mohnish Mirchandani
+ */
+@Singleton
+public class CachePolicy {
+
+    private static final String CONFIG_PATH = "youtube.cache.policy";
+
+    private final AsyncCacheApi cache;
+    private final SingleFlight singleFlight;
+    private final Map<CacheNamespace, Duration> ttls = new EnumMap<>(CacheNamespace.class);
+    private final Map<CacheNamespace, Duration> staleTtls = new EnumMap<>(CacheNamespace.class);
+    private final Map<CacheNamespace, NamespaceStats> stats = new EnumMap<>(CacheNamespace.class);
+    private final Duration quotaExceededTtl;
+    private final Duration serverErrorTtl;
+    private final Duration clientErrorTtl;
+    private final double refreshAheadFraction;
+    private final long refreshAheadMinHits;
+    private final Cache<String, AtomicLong> hitsSinceStore;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor for CachePolicy.
+     *
+     * @param cache The AsyncCacheApi storing the responses.
+     * @param config The application configuration, read from {@code youtube.cache.policy}.
+     * @param singleFlight Coalesces concurrent loads of the same key.
+     * @author Mohnish Mirchandani
+     */
+    @Inject
+    public CachePolicy(AsyncCacheApi cache, Config config, SingleFlight singleFlight) {
+        this.cache = cache;
+        this.singleFlight = singleFlight;
+        Config policy = config.getConfig(CONFIG_PATH);
+        for (CacheNamespace namespace : CacheNamespace.values()) {
+            ttls.put(namespace, policy.getDuration("ttl." + namespace.prefix()));
+            staleTtls.put(namespace, policy.getDuration("stale-ttl." + namespace.prefix()));
+            stats.put(namespace, new NamespaceStats());
+        }
+        this.quotaExceededTtl = policy.getDuration("negative-ttl.quota-exceeded");
+        this.serverErrorTtl = policy.getDuration("negative-ttl.server-error");
+        this.clientErrorTtl = policy.getDuration("negative-ttl.client-error");
+        this.refreshAheadFraction = policy.getDouble("refresh-ahead.fraction");
+        this.refreshAheadMinHits = policy.getLong("refresh-ahead.min-hits");
+        // A count never outlives the entry it belongs to, which expires within the longest stale TTL
+        this.hitsSinceStore = Caffeine.newBuilder()
+            .maximumSize(policy.getLong("refresh-ahead.max-tracked-keys"))
+            .expireAfterWrite(staleTtls.values().stream().max(Duration::compareTo).orElse(Duration.ZERO))
+            .build();
+    }
+
+    /**
+     * Gets a response from the cache, or loads and stores it according to the policy.
+     *
+     * @param namespace The namespace of the entry.
+     * @param key The key within the namespace.
+     * @param loader Loads the response from the YouTube API.
+     * @return A CompletionStage containing the cached or loaded response.
+     * @author Mohnish Mirchandani
+     */
+    public CompletionStage<YoutubeApiResponse> fetch(
+        CacheNamespace namespace,
+        String key,
+        Callable<CompletionStage<YoutubeApiResponse>> loader
+    ) {
+        String cacheKey = namespace.key(key);
+        NamespaceStats namespaceStats = stats.get(namespace);
+
+        return cache.<YoutubeApiResponse>get(cacheKey).thenCompose(cached -> {
+            if (cached.isPresent()) {
+                if (isStale(namespace, cached.get())) {
+                    namespaceStats.staleHits.incrementAndGet();
+                    refresh(namespace, cacheKey, loader);
+                } else {
+                    namespaceStats.hits.incrementAndGet();
+                    maybeRefreshAhead(namespace, cacheKey, cached.get(), loader);
+                }
+                return CompletableFuture.completedFuture(cached.get());
+            }
+            namespaceStats.misses.incrementAndGet();
+            return load(namespace, cacheKey, loader, false);
+        });
+    }
+
+    /**
+     * Checks whether a response is past the soft TTL of its namespace.
+     *
+     * @param namespace The namespace of the entry.
+     * @param response The cached response.
+     * @return True if the response is served stale.
+     * @author Mohnish Mirchandani
+     */
+    public boolean isStale(CacheNamespace namespace, YoutubeApiResponse response) {
+        return ageMillis(response) >= ttlFor(namespace, response).toMillis();
+    }
+
+    /**
+     * Gets the age of a response.
+     *
+     * @param response The cached response.
+     * @return The time since the response was fetched, in milliseconds.
+     * @author Mohnish Mirchandani
+     */
+    public long ageMillis(YoutubeApiResponse response) {
+        return Math.max(0, System.currentTimeMillis() - response.getFetchedAt());
+    }
+
+    /**
+     * Gets the TTL for a response in a namespace, based on its status.
+     *
+     * @param namespace The namespace of the entry.
+     * @param response The response to store.
+     * @return The soft TTL, or zero if the response should not be cached.
+     * @author Mohnish Mirchandani
+     */
+    public Duration ttlFor(CacheNamespace namespace, YoutubeApiResponse response) {
+        int status = response.getStatus();
+        if (status >= 200 && status < 300) {
+            return ttls.get(namespace);
+        }
+        if (status == 403 || status == 429) {
+            return quotaExceededTtl;
+        }
+        if (status >= 500) {
+            return serverErrorTtl;
+        }
+        if (status >= 400) {
+            return clientErrorTtl;
+        }
+        return Duration.ZERO;
+    }
+
+    /**
+     * Gets the hit, miss, store and refresh counters of every namespace.
+     *
+     * @return The per-namespace statistics as JSON.
+     * @author Mohnish Mirchandani
+     */
+    public ObjectNode stats() {
+        ObjectNode json = Json.newObject();
+        stats.forEach((namespace, namespaceStats) ->
+            json.set(namespace.prefix(), namespaceStats.toJson())
+        );
+        return json;
+    }
+
+    /**
+     * Loads and stores an entry. Concurrent loads of the same key share one upstream call.
+     * A background refresh never replaces the cached entry with an error response.
+     */
+    private CompletionStage<YoutubeApiResponse> load(
+        CacheNamespace namespace,
+        String cacheKey,
+        Callable<CompletionStage<YoutubeApiResponse>> loader,
+        boolean refresh
+    ) {
+        return singleFlight.execute("upstream", cacheKey, () -> {
+            CompletionStage<YoutubeApiResponse> loaded;
+            try {
+                loaded = loader.call();
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            return loaded.thenApply(response -> {
+                if (!refresh || isSuccess(response)) {
+                    store(namespace, cacheKey, response);
+                }
+                return response;
+            });
+        });
+    }
+
+    private void store(CacheNamespace namespace, String cacheKey, YoutubeApiResponse response) {
+        Duration ttl = isSuccess(response)
+            ? staleTtls.get(namespace)
+            : ttlFor(namespace, response);
+        if (ttl.getSeconds() <= 0) {
+            return;
+        }
+        NamespaceStats namespaceStats = stats.get(namespace);
+        if (isSuccess(response)) {
+            namespaceStats.stores.incrementAndGet();
+        } else {
+            namespaceStats.negativeStores.incrementAndGet();
+        }
+        hitsSinceStore.invalidate(cacheKey);
+        cache.set(cacheKey, response, (int) ttl.getSeconds());
+    }
+
+    /**
+     * Reloads a hot entry in the background once it has used up the configured fraction
+     * of its TTL, so popular keys are refreshed before they expire. Hits are counted per
+     * key since the entry was stored, in a map bounded by size and by the stale TTL.
+     */
+    private void maybeRefreshAhead(
+        CacheNamespace namespace,
+        String cacheKey,
+        YoutubeApiResponse cached,
+        Callable<CompletionStage<YoutubeApiResponse>> loader
+    ) {
+        long hits = hitsSinceStore.get(cacheKey, k -> new AtomicLong()).incrementAndGet();
+        long ttlMillis = ttlFor(namespace, cached).toMillis();
+        long age = System.currentTimeMillis() - cached.getFetchedAt();
+        if (hits >= refreshAheadMinHits && age >= ttlMillis * refreshAheadFraction) {
+            refresh(namespace, cacheKey, loader);
+        }
+    }
+
+    /**
+     * Starts a background refresh of an entry unless one is already running.
+     */
+    private void refresh(
+        CacheNamespace namespace,
+        String cacheKey,
+        Callable<CompletionStage<YoutubeApiResponse>> loader
+    ) {
+        if (!refreshing.add(cacheKey)) {
+            return;
+        }
+        stats.get(namespace).refreshes.incrementAndGet();
+        load(namespace, cacheKey, loader, true).whenComplete((response, error) ->
+            refreshing.remove(cacheKey)
+        );
+    }
+
+    private static boolean isSuccess(YoutubeApiResponse response) {
+        return response.getStatus() >= 200 && response.getStatus() < 300;
+    }
+
+    private static final class NamespaceStats {
+
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong staleHits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong stores = new AtomicLong();
+        final AtomicLong negativeStores = new AtomicLong();
+        final AtomicLong refreshes = new AtomicLong();
+
+        ObjectNode toJson() {
+            ObjectNode json = Json.newObject();
+            json.put("hits", hits.get());
+            json.put("staleHits", staleHits.get());
+            json.put("misses", misses.get());
+            json.put("stores", stores.get());
+            json.put("negativeStores", negativeStores.get());
+            json.put("refreshes", refreshes.get());
+            return json;
+        }
+    }
+}
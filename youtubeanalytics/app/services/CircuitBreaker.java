@@ -0,0 +1,188 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import play.libs.Json;
+
+/**
+ * Per-endpoint circuit breakers for the YouTube Data API.
+ * After a number of consecutive failures (errors or 5xx responses) the circuit of an
+ * endpoint opens, and its requests are answered from the last good response instead of
+ * being sent, or fail fast if there is none. Once the open duration has passed, a single
+ * probe request is let through: it closes the circuit if it succeeds and reopens it if not.
+ *
+ * @author Mohnish Mirchandani
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final boolean enabled;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Map<String, EndpointCircuit> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for CircuitBreaker.
+     *
+     * @param config The circuit breaker configuration.
+     * @author Mohnish Mirchandani
+     */
+    CircuitBreaker(Config config) {
+        this.enabled = config.getBoolean("enabled");
+        this.failureThreshold = config.getInt("failure-threshold");
+        this.openNanos = config.getDuration("open-duration").toNanos();
+    }
+
+    /**
+     * Runs a request unless the circuit of its endpoint is open.
+     *
+     * @param path The endpoint path.
+     * @param call Sends the request.
+     * @param isFailure Tells whether a response counts as a failure.
+     * @param fallback Gets the last good response, or null if there is none.
+     * @param <T> The type of the response.
+     * @return A CompletionStage with the response; with the fallback while the circuit is
+     *         open, or failed with a {@link CircuitOpenException} if there is no fallback.
+     * @author Mohnish Mirchandani
+     */
+    <T> CompletionStage<T> execute(
+        String path,
+        Supplier<CompletionStage<T>> call,
+        Predicate<T> isFailure,
+        Supplier<T> fallback
+    ) {
+        if (!enabled) {
+            return call.get();
+        }
+        EndpointCircuit circuit = endpoints.computeIfAbsent(path, p -> new EndpointCircuit());
+        if (!circuit.tryAcquire(openNanos)) {
+            T lastGood = fallback.get();
+            if (lastGood != null) {
+                circuit.fallbackHits.incrementAndGet();
+                return CompletableFuture.completedFuture(lastGood);
+            }
+            circuit.rejected.incrementAndGet();
+            CompletableFuture<T> rejection = new CompletableFuture<>();
+            rejection.completeExceptionally(new CircuitOpenException(path));
+            return rejection;
+        }
+        return call.get().whenComplete((response, error) -> {
+            if (error != null || isFailure.test(response)) {
+                circuit.onFailure(failureThreshold);
+            } else {
+                circuit.onSuccess();
+            }
+        });
+    }
+
+    /**
+     * Gets the state of the circuit of an endpoint.
+     *
+     * @param path The endpoint path.
+     * @return The state; CLOSED for endpoints that were never called.
+     * @author Mohnish Mirchandani
+     */
+    State state(String path) {
+        EndpointCircuit circuit = endpoints.get(path);
+        return circuit == null ? State.CLOSED : circuit.state();
+    }
+
+    /**
+     * Gets the state, the state transitions and the fallback hits per endpoint.
+     *
+     * @return The statistics as JSON.
+     * @author Mohnish Mirchandani
+     */
+    ObjectNode stats() {
+        ObjectNode json = Json.newObject();
+        endpoints.forEach((path, circuit) -> json.set(path, circuit.toJson()));
+        return json;
+    }
+
+    /**
+     * Signals a request that was not sent because the circuit of its endpoint is open and
+     * no earlier response could be served instead.
+     */
+    static final class CircuitOpenException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException(String path) {
+            super("Circuit open for " + path);
+        }
+    }
+
+    private static final class EndpointCircuit {
+
+        final AtomicLong opened = new AtomicLong();
+        final AtomicLong halfOpened = new AtomicLong();
+        final AtomicLong closed = new AtomicLong();
+        final AtomicLong fallbackHits = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+
+        synchronized State state() {
+            return state;
+        }
+
+        /**
+         * Lets a request through while closed, and a single probe once the open
+         * duration has passed.
+         */
+        synchronized boolean tryAcquire(long openNanos) {
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                halfOpened.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            if (state == State.HALF_OPEN) {
+                state = State.CLOSED;
+                closed.incrementAndGet();
+            }
+        }
+
+        synchronized void onFailure(int failureThreshold) {
+            consecutiveFailures++;
+            boolean probeFailed = state == State.HALF_OPEN;
+            if (probeFailed || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+                opened.incrementAndGet();
+            }
+        }
+
+        synchronized ObjectNode toJson() {
+            ObjectNode json = Json.newObject();
+            json.put("state", state.name());
+            json.put("consecutiveFailures", consecutiveFailures);
+            json.put("opened", opened.get());
+            json.put("halfOpened", halfOpened.get());
+            json.put("closed", closed.get());
+            json.put("fallbackHits", fallbackHits.get());
+            json.put("rejected", rejected.get());
+            return json;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import play.libs.Json;
+
+/**
+ * Adaptive limit of the YouTube Data API requests in flight.
+ * The lowest latency seen in a window of samples stands for the unloaded API. A request
+ * slower than a tolerated multiple of it, or failing, cuts the limit by a tenth; fast
+ * requests sent while the limit was at least half used raise it by one per limit's worth
+ * of requests. Requests beyond the limit wait in order, for at most the maximum wait.
+ *
+ * @author Mohnish Mirchandani
+ */
+class OutboundLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    // The unloaded latency is learned again after this many samples
+    private static final int RTT_WINDOW = 1000;
+
+    private final boolean enabled;
+    private final int maxConcurrent;
+    private final int minConcurrent;
+    private final long maxWaitNanos;
+    private final double latencyTolerance;
+    private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong queueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private double limit;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long samples;
+    private long dequeued;
+    private long increases;
+    private long decreases;
+
+    /**
+     * Constructor for OutboundLimiter.
+     *
+     * @param config The limiter configuration.
+     * @author Mohnish Mirchandani
+     */
+    OutboundLimiter(Config config) {
+        this.enabled = config.getBoolean("enabled");
+        this.maxConcurrent = Math.max(1, config.getInt("max-concurrent"));
+        this.minConcurrent = Math.max(1, Math.min(maxConcurrent, config.getInt("min-concurrent")));
+        this.limit = Math.max(minConcurrent, Math.min(maxConcurrent, config.getInt("initial-concurrent")));
+        this.maxWaitNanos = config.getDuration("max-wait").toNanos();
+        this.latencyTolerance = config.getDouble("latency-tolerance");
+    }
+
+    /**
+     * Sends a request once a slot is free.
+     *
+     * @param call Sends the request.
+     * @param <T> The type of the response.
+     * @return A CompletionStage with the response; it fails with a {@link TimeoutException}
+     *         if no slot was free within the maximum wait.
+     * @author Mohnish Mirchandani
+     */
+    <T> CompletionStage<T> submit(Supplier<CompletionStage<T>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Waiter waiter = new Waiter(result, inFlightAtSend -> send(call, result, inFlightAtSend));
+        int admittedWith;
+        synchronized (this) {
+            if (inFlight >= currentLimit()) {
+                waiter.enqueuedAt = System.nanoTime();
+                queued.incrementAndGet();
+                waiting.add(waiter);
+                CompletableFuture.delayedExecutor(maxWaitNanos, TimeUnit.NANOSECONDS)
+                    .execute(() -> expire(waiter));
+                return result;
+            }
+            admittedWith = ++inFlight;
+            admitted.incrementAndGet();
+        }
+        waiter.start.send(admittedWith);
+        return result;
+    }
+
+    /**
+     * Gets the current limit of requests in flight.
+     *
+     * @return The limit.
+     * @author Mohnish Mirchandani
+     */
+    synchronized int currentLimit() {
+        return Math.max(minConcurrent, (int) limit);
+    }
+
+    /**
+     * Adjusts the limit with the latency of a finished request.
+     *
+     * @param rttNanos The latency of the request.
+     * @param failed Whether the request failed.
+     * @param inFlightAtSend The requests in flight when it was sent, itself included.
+     * @author Mohnish Mirchandani
+     */
+    void onSample(long rttNanos, boolean failed, int inFlightAtSend) {
+        List<Waiter> admittedWaiters;
+        synchronized (this) {
+            if (!failed) {
+                minRttNanos = ++samples % RTT_WINDOW == 0 ? rttNanos : Math.min(minRttNanos, rttNanos);
+            }
+            if (failed || rttNanos > minRttNanos * latencyTolerance) {
+                limit = Math.max(minConcurrent, limit * BACKOFF_RATIO);
+                decreases++;
+            } else if (inFlightAtSend * 2 >= limit && limit < maxConcurrent) {
+                limit = Math.min(maxConcurrent, limit + 1.0 / limit);
+                increases++;
+            }
+            admittedWaiters = admitWaiting();
+        }
+        startAll(admittedWaiters);
+    }
+
+    /**
+     * Gets the current limit, the requests in flight and waiting, and the time requests
+     * spent in the queue.
+     *
+     * @return The statistics as JSON.
+     * @author Mohnish Mirchandani
+     */
+    synchronized ObjectNode stats() {
+        ObjectNode json = Json.newObject();
+        json.put("enabled", enabled);
+        json.put("limit", currentLimit());
+        json.put("minConcurrent", minConcurrent);
+        json.put("maxConcurrent", maxConcurrent);
+        json.put("inFlight", inFlight);
+        json.put("waiting", waiting.size());
+        json.put("minLatencyMillis", minRttNanos == Long.MAX_VALUE ? 0 : minRttNanos / 1_000_000);
+        json.put("increases", increases);
+        json.put("decreases", decreases);
+        json.put("admitted", admitted.get());
+        json.put("queued", queued.get());
+        json.put("timedOut", timedOut.get());
+        json.put("avgQueueMillis", dequeued == 0 ? 0 : queueNanos.get() / dequeued / 1_000_000);
+        json.put("maxQueueMillis", maxQueueNanos.get() / 1_000_000);
+        return json;
+    }
+
+    private <T> void send(Supplier<CompletionStage<T>> call, CompletableFuture<T> result, int inFlightAtSend) {
+        long sentAt = System.nanoTime();
+        CompletionStage<T> sent;
+        try {
+            sent = call.get();
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((response, error) -> {
+            release();
+            onSample(System.nanoTime() - sentAt, error != null, inFlightAtSend);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(response);
+            }
+        });
+    }
+
+    private void release() {
+        List<Waiter> admittedWaiters;
+        synchronized (this) {
+            inFlight--;
+            admittedWaiters = admitWaiting();
+        }
+        startAll(admittedWaiters);
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!waiting.remove(waiter)) {
+                return;
+            }
+            timedOut.incrementAndGet();
+        }
+        waiter.result.completeExceptionally(
+            new TimeoutException("No outbound slot within " + maxWaitNanos / 1_000_000 + "ms")
+        );
+    }
+
+    /**
+     * Takes waiting requests in order while the limit allows. Must be called holding the
+     * lock; the requests are started after releasing it.
+     */
+    private List<Waiter> admitWaiting() {
+        List<Waiter> admittedWaiters = new ArrayList<>();
+        long now = System.nanoTime();
+        while (inFlight < currentLimit() && !waiting.isEmpty()) {
+            Waiter waiter = waiting.poll();
+            waiter.admittedWith = ++inFlight;
+            admitted.incrementAndGet();
+            long queuedNanos = now - waiter.enqueuedAt;
+            dequeued++;
+            queueNanos.addAndGet(queuedNanos);
+            maxQueueNanos.accumulateAndGet(queuedNanos, Math::max);
+            admittedWaiters.add(waiter);
+        }
+        return admittedWaiters;
+    }
+
+    private static void startAll(List<Waiter> admittedWaiters) {
+        admittedWaiters.forEach(waiter -> waiter.start.send(waiter.admittedWith));
+    }
+
+    private interface Start {
+        void send(int inFlightAtSend);
+    }
+
+    private static final class Waiter {
+
+        final CompletableFuture<?> result;
+        final Start start;
+        long enqueuedAt;
+        int admittedWith;
+
+        Waiter(CompletableFuture<?> result, Start start) {
+            this.result = result;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import play.libs.Json;
+
+/**
+ * Maps search queries to a canonical form, so equivalent spellings of a query share one
+ * cache slot and one enrichment. Queries are NFKC-normalized, case-folded and their
+ * whitespace is collapsed; optionally, stopwords are dropped as well.
+ * The first spelling seen for every canonical query is remembered to report how many
+ * queries were deduplicated by the normalization.
+ *
+ * @author Mohnish Mirchandani
+ */
+@Singleton
+public class QueryNormalizer {
+
+    private static final String CONFIG_PATH = "youtube.query";
+    private static final int MAX_TRACKED_QUERIES = 10000;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Set<String> STOPWORDS = new HashSet<>(
+        Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "how", "in",
+            "is", "it", "of", "on", "or", "the", "to", "what", "with"
+        )
+    );
+
+    private final boolean ignoreStopwords;
+    private final Map<String, String> firstSpellings =
+        new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_TRACKED_QUERIES;
+            }
+        };
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    /**
+     * Constructor for QueryNormalizer.
+     *
+     * @param config The application configuration, read from {@code youtube.query}.
+     * @author Mohnish Mirchandani
+     */
+    @Inject
+    public QueryNormalizer(Config config) {
+        this.ignoreStopwords = config.getBoolean(CONFIG_PATH + ".ignore-stopwords");
+    }
+
+    /**
+     * Gets the canonical form of a query and records whether an earlier, different
+     * spelling already maps to it.
+     *
+     * @param query The query as typed by the user.
+     * @return The canonical query.
+     * @author Mohnish Mirchandani
+     */
+    public String canonicalize(String query) {
+        String canonical = normalize(query);
+        queries.incrementAndGet();
+        String firstSpelling;
+        synchronized (firstSpellings) {
+            firstSpelling = firstSpellings.putIfAbsent(canonical, query);
+        }
+        if (firstSpelling != null && !firstSpelling.equals(query)) {
+            deduplicated.incrementAndGet();
+        }
+        return canonical;
+    }
+
+    /**
+     * Gets the canonical form of a query without recording it.
+     *
+     * @param query The query as typed by the user.
+     * @return The canonical query.
+     * @author Mohnish Mirchandani
+     */
+    public String normalize(String query) {
+        String folded = WHITESPACE
+            .matcher(Normalizer.normalize(query, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT))
+            .replaceAll(" ")
+            .trim();
+        if (!ignoreStopwords) {
+            return folded;
+        }
+        String withoutStopwords = Arrays
+            .stream(folded.split(" "))
+            .filter(word -> !STOPWORDS.contains(word))
+            .collect(Collectors.joining(" "));
+        // A query made only of stopwords keeps them
+        return withoutStopwords.isEmpty() ? folded : withoutStopwords;
+    }
+
+    /**
+     * Gets the number of canonicalized queries and the share of them that reused the
+     * slot of a differently spelled query.
+     *
+     * @return The statistics as JSON.
+     * @author Mohnish Mirchandani
+     */
+    public ObjectNode stats() {
+        ObjectNode json = Json.newObject();
+        long total = queries.get();
+        json.put("queries", total);
+        json.put("deduplicated", deduplicated.get());
+        json.put("dedupRatio", total == 0 ? 0.0 : (double) deduplicated.get() / total);
+        json.put("ignoreStopwords", ignoreStopwords);
+        return json;
+    }
+}
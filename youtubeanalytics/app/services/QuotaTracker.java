@@ -0,0 +1,112 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import play.libs.Json;
+
+/**
+ * Counts the YouTube Data API quota units spent today with one key.
+ * The quota resets at midnight Pacific Time; a /search call costs 100 units and the other
+ * calls used here cost one.
+ *
+ * @author Mohnish Mirchandani
+ */
+class QuotaTracker {
+
+    static final ZoneId QUOTA_ZONE = ZoneId.of("America/Los_Angeles");
+    private static final int SEARCH_COST = 100;
+
+    private final long dailyUnits;
+    private final Clock clock;
+    private LocalDate day;
+    private long used;
+
+    /**
+     * Constructor for QuotaTracker.
+     *
+     * @param dailyUnits The quota units available per day.
+     * @param clock The clock the quota day is read from.
+     * @author Mohnish Mirchandani
+     */
+    QuotaTracker(long dailyUnits, Clock clock) {
+        this.dailyUnits = dailyUnits;
+        this.clock = clock;
+        this.day = LocalDate.now(clock.withZone(QUOTA_ZONE));
+    }
+
+    /**
+     * Gets the quota cost of a call to an endpoint.
+     *
+     * @param path The endpoint path.
+     * @return The cost in quota units.
+     * @author Mohnish Mirchandani
+     */
+    static int cost(String path) {
+        return "/search".equals(path) ? SEARCH_COST : 1;
+    }
+
+    /**
+     * Records a call sent to an endpoint.
+     *
+     * @param path The endpoint path.
+     * @author Mohnish Mirchandani
+     */
+    synchronized void spend(String path) {
+        rollOver();
+        used += cost(path);
+    }
+
+    /**
+     * Marks today's quota as used up, e.g. when the API answered 403 quotaExceeded before
+     * the count reached the daily units. The quota is available again after the reset.
+     *
+     * @author Mohnish Mirchandani
+     */
+    synchronized void exhaust() {
+        rollOver();
+        used = Math.max(used, dailyUnits);
+    }
+
+    /**
+     * Gets the quota units left today.
+     *
+     * @return The remaining units, at least 0.
+     * @author Mohnish Mirchandani
+     */
+    synchronized long remainingUnits() {
+        rollOver();
+        return Math.max(0, dailyUnits - used);
+    }
+
+    /**
+     * Gets the units available, spent and left today, and the time until the reset.
+     *
+     * @return The statistics as JSON.
+     * @author Mohnish Mirchandani
+     */
+    synchronized ObjectNode stats() {
+        rollOver();
+        ObjectNode json = Json.newObject();
+        json.put("dailyUnits", dailyUnits);
+        json.put("used", used);
+        json.put("remaining", Math.max(0, dailyUnits - used));
+        ZonedDateTime now = ZonedDateTime.now(clock.withZone(QUOTA_ZONE));
+        json.put(
+            "resetInSeconds",
+            Duration.between(now, day.plusDays(1).atStartOfDay(QUOTA_ZONE)).getSeconds()
+        );
+        return json;
+    }
+
+    private void rollOver() {
+        LocalDate today = LocalDate.now(clock.withZone(QUOTA_ZONE));
+        if (!today.equals(day)) {
+            day = today;
+            used = 0;
+        }
+    }
+}
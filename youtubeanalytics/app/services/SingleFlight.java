@@ -0,0 +1,96 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.inject.Singleton;
+import play.libs.Json;
+
+/**
+ * Coalesces concurrent identical requests.
+ * The first caller for a key runs the work; callers arriving while it is in flight
+ * share its result instead of starting their own. Calls are grouped by name, e.g.
+ * "search" or "upstream", and the coalescing rate is counted per group.
+ *
+ * @author Mohnish Mirchandani
+ */
+@Singleton
+public class SingleFlight {
+
+    private final Map<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, GroupStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the work for a key, or joins the run already in flight for it.
+     *
+     * @param group The name of the group the call belongs to.
+     * @param key The key identifying identical requests within the group.
+     * @param work Starts the work when no run is in flight.
+     * @return A CompletionStage completed with the shared result.
+     * @author Mohnish Mirchandani
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletionStage<T> execute(
+        String group,
+        String key,
+        Supplier<CompletionStage<T>> work
+    ) {
+        String flightKey = group + ":" + key;
+        GroupStats groupStats = stats.computeIfAbsent(group, g -> new GroupStats());
+        groupStats.calls.incrementAndGet();
+
+        CompletableFuture<T> promise = new CompletableFuture<>();
+        CompletableFuture<T> existing =
+            (CompletableFuture<T>) inFlight.putIfAbsent(flightKey, promise);
+        if (existing != null) {
+            groupStats.coalesced.incrementAndGet();
+            return existing.thenApply(Function.identity());
+        }
+
+        try {
+            work.get().whenComplete((result, error) -> {
+                inFlight.remove(flightKey, promise);
+                if (error != null) {
+                    promise.completeExceptionally(error);
+                } else {
+                    promise.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(flightKey, promise);
+            promise.completeExceptionally(e);
+        }
+        return promise.thenApply(Function.identity());
+    }
+
+    /**
+     * Gets the number of calls, coalesced calls and the coalescing rate of every group.
+     *
+     * @return The per-group statistics as JSON.
+     * @author Mohnish Mirchandani
+     */
+    public ObjectNode stats() {
+        ObjectNode json = Json.newObject();
+        stats.forEach((group, groupStats) -> {
+            long calls = groupStats.calls.get();
+            long coalesced = groupStats.coalesced.get();
+            ObjectNode groupJson = json.putObject(group);
+            groupJson.put("calls", calls);
+            groupJson.put("coalesced", coalesced);
+            groupJson.put("coalescingRate", calls == 0 ? 0.0 : (double) coalesced / calls);
+        });
+        json.put("inFlight", inFlight.size());
+        return json;
+    }
+
+    private static final class GroupStats {
+
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong coalesced = new AtomicLong();
+    }
+}
@@ -0,0 +1,394 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.typesafe.config.Config;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import models.YoutubeApiResponse;
+import org.apache.pekko.Done;
+import play.cache.AsyncCacheApi;
+import play.libs.Json;
+
+/**
+ * Two-tier implementation of the AsyncCacheApi.
+ * The heap tier is a small, weight-bounded Caffeine cache of decoded objects. Entries evicted from it are
+ * demoted to the cold tier, which keeps them as compressed, serialized bytes off the heap,
+ * and are promoted back to the heap tier on their next hit.
+ * The cold tier is a single direct buffer of {@code cold.max-bytes}, allocated on the first
+ * demotion and written as a ring: every entry is appended after the previous one, and the
+ * oldest entries are evicted when the ring wraps around onto them.
+ *
+ * @author Mohnish Mirchandani
+ */
+@Singleton
+public class TieredAsyncCache implements AsyncCacheApi {
+
+    private static final String CONFIG_PATH = "youtube.cache";
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int DEFAULT_WEIGHT = 1024;
+
+    private final Cache<String, HeapEntry> heapTier;
+    private final LinkedHashMap<String, ColdEntry> coldTier;
+    private final long coldMaxBytes;
+    private final long coldMaxEntryBytes;
+    private final int coldCapacity;
+    private ByteBuffer coldSlab;
+    private int coldWritePosition;
+    private long coldBytes;
+
+    private final TierStats heapStats = new TierStats();
+    private final TierStats coldStats = new TierStats();
+
+    /**
+     * Constructor for TieredAsyncCache.
+     *
+     * @param config The application configuration, read from {@code youtube.cache}.
+     * @author Mohnish Mirchandani
+     */
+    @Inject
+    public TieredAsyncCache(Config config) {
+        Config cacheConfig = config.getConfig(CONFIG_PATH);
+        this.coldMaxBytes = cacheConfig.getBytes("cold.max-bytes");
+        this.coldMaxEntryBytes = cacheConfig.getBytes("cold.max-entry-bytes");
+        this.coldCapacity = (int) Math.min(coldMaxBytes, Integer.MAX_VALUE);
+        // Entries leave the cold tier when they are read, so insertion order is ring order
+        this.coldTier = new LinkedHashMap<>();
+        this.heapTier = Caffeine.newBuilder()
+            .maximumWeight(cacheConfig.getBytes("heap.max-weight"))
+            .weigher((String key, HeapEntry entry) -> entry.weight)
+            .executor(Runnable::run)
+            .removalListener((String key, HeapEntry entry, RemovalCause cause) -> {
+                if (cause == RemovalCause.SIZE && entry != null) {
+                    heapStats.evictions.incrementAndGet();
+                    demote(key, entry);
+                }
+            })
+            .build();
+    }
+
+    @Override
+    public <T> CompletionStage<Optional<T>> get(String key) {
+        return CompletableFuture.completedFuture(Optional.ofNullable(lookup(key)));
+    }
+
+    /**
+     * Same as {@link #get(String)}, kept for callers of the older cache API.
+     *
+     * @param key The cache key.
+     * @return A CompletionStage containing the cached value, if any.
+     * @author Mohnish Mirchandani
+     */
+    public <T> CompletionStage<Optional<T>> getOptional(String key) {
+        return get(key);
+    }
+
+    @Override
+    public <T> CompletionStage<T> getOrElseUpdate(
+        String key,
+        Callable<CompletionStage<T>> block,
+        int expiration
+    ) {
+        T cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        try {
+            return block.call().thenApply(value -> {
+                put(key, value, expiration);
+                return value;
+            });
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public <T> CompletionStage<T> getOrElseUpdate(
+        String key,
+        Callable<CompletionStage<T>> block
+    ) {
+        return getOrElseUpdate(key, block, 0);
+    }
+
+    @Override
+    public CompletionStage<Done> set(String key, Object value, int expiration) {
+        put(key, value, expiration);
+        return CompletableFuture.completedFuture(Done.getInstance());
+    }
+
+    @Override
+    public CompletionStage<Done> set(String key, Object value) {
+        return set(key, value, 0);
+    }
+
+    @Override
+    public CompletionStage<Done> remove(String key) {
+        heapTier.invalidate(key);
+        synchronized (coldTier) {
+            removeCold(key);
+        }
+        return CompletableFuture.completedFuture(Done.getInstance());
+    }
+
+    @Override
+    public CompletionStage<Done> removeAll() {
+        heapTier.invalidateAll();
+        synchronized (coldTier) {
+            coldTier.clear();
+            coldBytes = 0;
+            coldWritePosition = 0;
+        }
+        return CompletableFuture.completedFuture(Done.getInstance());
+    }
+
+    /**
+     * Gets the hit, miss, eviction and size counters of both tiers.
+     *
+     * @return The per-tier statistics as JSON.
+     * @author Mohnish Mirchandani
+     */
+    public ObjectNode stats() {
+        ObjectNode stats = Json.newObject();
+        ObjectNode heap = heapStats.toJson();
+        heap.put("entries", heapTier.estimatedSize());
+        heapTier.policy().eviction().ifPresent(eviction -> {
+            heap.put("weight", eviction.weightedSize().orElse(0L));
+            heap.put("maxWeight", eviction.getMaximum());
+        });
+        stats.set("heap", heap);
+        ObjectNode cold = coldStats.toJson();
+        synchronized (coldTier) {
+            cold.put("entries", coldTier.size());
+            cold.put("bytes", coldBytes);
+        }
+        cold.put("maxBytes", coldMaxBytes);
+        stats.set("cold", cold);
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(String key) {
+        long now = System.currentTimeMillis();
+        HeapEntry heapEntry = heapTier.getIfPresent(key);
+        if (heapEntry != null) {
+            if (!heapEntry.isExpired(now)) {
+                heapStats.hits.incrementAndGet();
+                return (T) heapEntry.value;
+            }
+            heapTier.invalidate(key);
+        }
+        heapStats.misses.incrementAndGet();
+
+        ColdEntry coldEntry;
+        byte[] data = null;
+        synchronized (coldTier) {
+            coldEntry = removeCold(key);
+            if (coldEntry != null && !coldEntry.isExpired(now)) {
+                // Copied under the lock: the next demotion may reuse the freed bytes
+                data = read(coldEntry);
+            }
+        }
+        if (data == null) {
+            coldStats.misses.incrementAndGet();
+            return null;
+        }
+        Object value = decode(data);
+        if (value == null) {
+            coldStats.misses.incrementAndGet();
+            return null;
+        }
+        coldStats.hits.incrementAndGet();
+        coldStats.promotions.incrementAndGet();
+        heapTier.put(key, new HeapEntry(value, coldEntry.expiresAt));
+        return (T) value;
+    }
+
+    private void put(String key, Object value, int expiration) {
+        long expiresAt = expiration > 0
+            ? System.currentTimeMillis() + expiration * 1000L
+            : Long.MAX_VALUE;
+        synchronized (coldTier) {
+            removeCold(key);
+        }
+        heapTier.put(key, new HeapEntry(value, expiresAt));
+    }
+
+    /**
+     * Moves an entry evicted from the heap tier into the cold tier, if it is still live,
+     * serializable and within the per-entry size limit. The bytes are written at the
+     * ring's write position, or at its start if they do not fit before the end, after
+     * evicting the oldest entries they would overwrite.
+     */
+    private void demote(String key, HeapEntry entry) {
+        if (entry.isExpired(System.currentTimeMillis())) {
+            return;
+        }
+        byte[] bytes = entry.value instanceof Serializable ? encode(entry.value) : null;
+        if (bytes == null || bytes.length > coldMaxEntryBytes || bytes.length > coldCapacity) {
+            coldStats.rejections.incrementAndGet();
+            return;
+        }
+
+        synchronized (coldTier) {
+            removeCold(key);
+            if (coldSlab == null) {
+                coldSlab = ByteBuffer.allocateDirect(coldCapacity);
+            }
+            int start = coldWritePosition;
+            int end = start + bytes.length;
+            boolean wraps = end > coldCapacity;
+            if (wraps) {
+                start = 0;
+                end = bytes.length;
+            }
+
+            // The eldest entries lie right ahead of the write position
+            Iterator<Map.Entry<String, ColdEntry>> eldest = coldTier.entrySet().iterator();
+            while (eldest.hasNext()) {
+                ColdEntry old = eldest.next().getValue();
+                boolean overwritten = wraps
+                    ? old.offset + old.length > coldWritePosition || old.offset < end
+                    : old.offset < end && old.offset + old.length > start;
+                if (!overwritten) {
+                    break;
+                }
+                coldBytes -= old.length;
+                eldest.remove();
+                coldStats.evictions.incrementAndGet();
+            }
+
+            ByteBuffer target = coldSlab.duplicate();
+            target.position(start);
+            target.put(bytes);
+            coldWritePosition = end;
+            coldTier.put(key, new ColdEntry(start, bytes.length, entry.expiresAt));
+            coldBytes += bytes.length;
+            coldStats.admissions.incrementAndGet();
+        }
+    }
+
+    private byte[] read(ColdEntry entry) {
+        byte[] bytes = new byte[entry.length];
+        ByteBuffer source = coldSlab.duplicate();
+        source.position(entry.offset);
+        source.get(bytes);
+        return bytes;
+    }
+
+    private ColdEntry removeCold(String key) {
+        ColdEntry removed = coldTier.remove(key);
+        if (removed != null) {
+            coldBytes -= removed.length;
+        }
+        return removed;
+    }
+
+    private static byte[] encode(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object decode(byte[] data) {
+        try (ObjectInputStream in = new ObjectInputStream(
+            new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Approximate heap footprint of a cached value in bytes. API responses are weighed
+     * by their body, anything else by a fixed default.
+     */
+    private static int weigh(Object value) {
+        if (value instanceof YoutubeApiResponse) {
+            String body = ((YoutubeApiResponse) value).getBody();
+            return ENTRY_OVERHEAD + (body == null ? 0 : body.length() * 2);
+        }
+        if (value instanceof String) {
+            return ENTRY_OVERHEAD + ((String) value).length() * 2;
+        }
+        return DEFAULT_WEIGHT;
+    }
+
+    private static final class HeapEntry {
+
+        final Object value;
+        final long expiresAt;
+        final int weight;
+
+        HeapEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.weight = weigh(value);
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private static final class ColdEntry {
+
+        final int offset;
+        final int length;
+        final long expiresAt;
+
+        ColdEntry(int offset, int length, long expiresAt) {
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private static final class TierStats {
+
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+        final AtomicLong admissions = new AtomicLong();
+        final AtomicLong rejections = new AtomicLong();
+        final AtomicLong promotions = new AtomicLong();
+
+        ObjectNode toJson() {
+            ObjectNode json = Json.newObject();
+            json.put("hits", hits.get());
+            json.put("misses", misses.get());
+            json.put("evictions", evictions.get());
+            json.put("admissions", admissions.get());
+            json.put("rejections", rejections.get());
+            json.put("promotions", promotions.get());
+            return json;
+        }
+    }
+}
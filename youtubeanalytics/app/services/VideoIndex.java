@@ -0,0 +1,369 @@
+package services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import play.libs.Json;
+
+/**
+ * In-memory inverted index over the video details fetched from the YouTube API.
+ * Every video is indexed under its tags and under the hashtags in its title and
+ * description, so tag pages can be answered without a 100-unit search call. The words of
+ * its title and description are indexed separately as keywords, normalized like tags, for
+ * the keyword pages linked from the word statistics.
+ * Postings lists hold ascending document ids as delta-encoded varints. Documents are kept
+ * in two segments: when the current one is full, the previous one is dropped, which bounds
+ * the memory used while keeping the most recently fetched videos.
+ *
+ * @author Elston Farel
+ */
+@Singleton
+public class VideoIndex {
+
+    private static final String CONFIG_PATH = "youtube.index";
+    private static final Pattern HASHTAG = Pattern.compile("#([\\p{L}\\p{N}_]+)");
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}_]+");
+
+    private final int segmentMaxDocs;
+    private final int minResults;
+    private Segment current = new Segment();
+    private Segment previous = new Segment();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong localAnswers = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+    private final AtomicLong maxLookupNanos = new AtomicLong();
+
+    /**
+     * Constructor for VideoIndex.
+     *
+     * @param config The application configuration, read from {@code youtube.index}.
+     * @author Elston Farel
+     */
+    @Inject
+    public VideoIndex(Config config) {
+        Config index = config.getConfig(CONFIG_PATH);
+        this.segmentMaxDocs = index.getInt("segment-max-docs");
+        this.minResults = index.getInt("min-results");
+    }
+
+    /**
+     * Indexes the videos of a /videos response. Videos already in the index are skipped.
+     *
+     * @param videosResponse The parsed body of a /videos response.
+     * @author Elston Farel
+     */
+    public void addAll(JsonNode videosResponse) {
+        JsonNode items = videosResponse == null ? null : videosResponse.get("items");
+        if (items == null) {
+            return;
+        }
+        for (JsonNode item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Indexes a video resource.
+     *
+     * @param video A video resource with its snippet.
+     * @author Elston Farel
+     */
+    public synchronized void add(JsonNode video) {
+        String videoId = video.path("id").asText(null);
+        JsonNode snippet = video.get("snippet");
+        if (videoId == null || snippet == null) {
+            return;
+        }
+        if (current.docIds.containsKey(videoId) || previous.docIds.containsKey(videoId)) {
+            return;
+        }
+        if (current.docs.size() >= segmentMaxDocs) {
+            previous = current;
+            current = new Segment();
+        }
+        ObjectNode doc = Json.newObject();
+        doc.put("videoId", videoId);
+        doc.put("title", snippet.path("title").asText());
+        doc.put("description", snippet.path("description").asText());
+        doc.put(
+            "thumbnailUrl",
+            snippet.path("thumbnails").path("default").path("url").asText()
+        );
+        current.add(videoId, doc, tagsOf(snippet), keywordsOf(snippet));
+    }
+
+    /**
+     * Finds the most recently indexed videos carrying a tag or hashtag.
+     *
+     * @param tag The tag, with or without a leading '#'.
+     * @param limit The maximum number of videos.
+     * @return The matching videos, newest first, or null if fewer than the configured
+     *         minimum are indexed and the caller should ask the API instead.
+     * @author Elston Farel
+     */
+    public ArrayNode findByTag(String tag, int limit) {
+        String term = normalize(tag.startsWith("#") ? tag.substring(1) : tag);
+        return find(segment -> segment.tags, Collections.singleton(term), limit);
+    }
+
+    /**
+     * Finds the most recently indexed videos whose title or description contains every
+     * word of a query.
+     *
+     * @param query The keywords, separated by spaces or punctuation.
+     * @param limit The maximum number of videos.
+     * @return The matching videos, newest first, or null if fewer than the configured
+     *         minimum are indexed and the caller should ask the API instead.
+     * @author Elston Farel
+     */
+    public ArrayNode findByKeywords(String query, int limit) {
+        return find(segment -> segment.keywords, wordsOf(query), limit);
+    }
+
+    /**
+     * Collects the videos carrying all the terms in one of the postings maps of the
+     * segments and records the lookup in the statistics.
+     */
+    private ArrayNode find(
+        Function<Segment, Map<String, PostingList>> postings,
+        Set<String> terms,
+        int limit
+    ) {
+        long start = System.nanoTime();
+        List<ObjectNode> matches = new ArrayList<>();
+        synchronized (this) {
+            current.collect(postings.apply(current), terms, limit, matches);
+            previous.collect(postings.apply(previous), terms, limit, matches);
+        }
+        long elapsed = System.nanoTime() - start;
+        lookups.incrementAndGet();
+        lookupNanos.addAndGet(elapsed);
+        maxLookupNanos.accumulateAndGet(elapsed, Math::max);
+        if (matches.size() < Math.min(limit, minResults)) {
+            return null;
+        }
+        localAnswers.incrementAndGet();
+        ArrayNode videos = JsonNodeFactory.instance.arrayNode();
+        matches.forEach(doc -> videos.add(doc.deepCopy()));
+        return videos;
+    }
+
+    /**
+     * Gets the size of the index and the latency of its lookups.
+     *
+     * @return The statistics as JSON.
+     * @author Elston Farel
+     */
+    public ObjectNode stats() {
+        ObjectNode json = Json.newObject();
+        synchronized (this) {
+            json.put("videos", current.docs.size() + previous.docs.size());
+            json.put("terms", current.tags.size() + previous.tags.size());
+            json.put("keywords", current.keywords.size() + previous.keywords.size());
+            json.put("postingsBytes", current.postingsBytes() + previous.postingsBytes());
+        }
+        long lookupCount = lookups.get();
+        json.put("lookups", lookupCount);
+        json.put("localAnswers", localAnswers.get());
+        json.put("coverage", lookupCount == 0 ? 0.0 : (double) localAnswers.get() / lookupCount);
+        json.put(
+            "avgLookupMicros",
+            lookupCount == 0 ? 0.0 : lookupNanos.get() / 1000.0 / lookupCount
+        );
+        json.put("maxLookupMicros", maxLookupNanos.get() / 1000.0);
+        return json;
+    }
+
+    /**
+     * Collects the normalized tags of a video and the hashtags of its title and description.
+     */
+    private static Set<String> tagsOf(JsonNode snippet) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (JsonNode tag : snippet.path("tags")) {
+            terms.add(normalize(tag.asText()));
+        }
+        for (String field : new String[] { "title", "description" }) {
+            Matcher matcher = HASHTAG.matcher(snippet.path(field).asText());
+            while (matcher.find()) {
+                terms.add(normalize(matcher.group(1)));
+            }
+        }
+        terms.remove("");
+        return terms;
+    }
+
+    /**
+     * Collects the normalized words of the title and description of a video.
+     */
+    private static Set<String> keywordsOf(JsonNode snippet) {
+        Set<String> terms = wordsOf(snippet.path("title").asText());
+        terms.addAll(wordsOf(snippet.path("description").asText()));
+        return terms;
+    }
+
+    /**
+     * Splits a text into words at anything but letters, digits and underscores, the
+     * characters of a hashtag, and normalizes every word.
+     */
+    private static Set<String> wordsOf(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : WORD_SEPARATOR.split(text)) {
+            words.add(normalize(word));
+        }
+        words.remove("");
+        return words;
+    }
+
+    /**
+     * Normalizes a tag the way hashtags are written: lower case, without whitespace.
+     */
+    static String normalize(String tag) {
+        return tag.toLowerCase(Locale.ROOT).replaceAll("\\s+", "");
+    }
+
+    /**
+     * A set of documents with their postings lists, by tag and by keyword. Document ids
+     * are assigned in insertion order, so every postings list is appended to in ascending
+     * order.
+     */
+    private static final class Segment {
+
+        final List<ObjectNode> docs = new ArrayList<>();
+        final Map<String, Integer> docIds = new HashMap<>();
+        final Map<String, PostingList> tags = new HashMap<>();
+        final Map<String, PostingList> keywords = new HashMap<>();
+
+        void add(String videoId, ObjectNode doc, Set<String> tagTerms, Set<String> keywordTerms) {
+            int docId = docs.size();
+            docs.add(doc);
+            docIds.put(videoId, docId);
+            for (String term : tagTerms) {
+                tags.computeIfAbsent(term, t -> new PostingList()).append(docId);
+            }
+            for (String term : keywordTerms) {
+                keywords.computeIfAbsent(term, t -> new PostingList()).append(docId);
+            }
+        }
+
+        /**
+         * Adds the newest documents listed under every term, intersecting the postings
+         * lists. Nothing matches an empty set of terms.
+         */
+        void collect(
+            Map<String, PostingList> postings,
+            Set<String> terms,
+            int limit,
+            List<ObjectNode> matches
+        ) {
+            int[] docIds = null;
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list == null) {
+                    return;
+                }
+                docIds = docIds == null ? list.decode() : intersect(docIds, list.decode());
+            }
+            if (docIds == null) {
+                return;
+            }
+            for (int i = docIds.length - 1; i >= 0 && matches.size() < limit; i--) {
+                matches.add(docs.get(docIds[i]));
+            }
+        }
+
+        long postingsBytes() {
+            long bytes = 0;
+            for (PostingList list : tags.values()) {
+                bytes += list.size;
+            }
+            for (PostingList list : keywords.values()) {
+                bytes += list.size;
+            }
+            return bytes;
+        }
+
+        private static int[] intersect(int[] left, int[] right) {
+            int[] both = new int[Math.min(left.length, right.length)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < left.length && j < right.length) {
+                if (left[i] < right[j]) {
+                    i++;
+                } else if (left[i] > right[j]) {
+                    j++;
+                } else {
+                    both[count++] = left[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(both, count);
+        }
+    }
+
+    /**
+     * Ascending document ids stored as varint-encoded gaps.
+     */
+    static final class PostingList {
+
+        private byte[] bytes = new byte[4];
+        private int size;
+        private int count;
+        private int lastDocId;
+
+        void append(int docId) {
+            int gap = docId - lastDocId;
+            lastDocId = docId;
+            count++;
+            while ((gap & ~0x7F) != 0) {
+                write((byte) ((gap & 0x7F) | 0x80));
+                gap >>>= 7;
+            }
+            write((byte) gap);
+        }
+
+        int[] decode() {
+            int[] docIds = new int[count];
+            int docId = 0;
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                docId += gap;
+                docIds[i] = docId;
+            }
+            return docIds;
+        }
+
+        private void write(byte b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = b;
+        }
+    }
+}
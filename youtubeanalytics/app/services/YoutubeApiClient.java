@@ -0,0 +1,217 @@
+package services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import models.YoutubeApiResponse;
+import play.libs.Json;
+import play.libs.ws.WSClient;
+import play.libs.ws.WSRequest;
+
+/**
+ * HTTP client for the YouTube Data API.
+ * The last successful response of every request is remembered with its ETag, and the next
+ * identical request is sent with If-None-Match. When the API answers 304 Not Modified the
+ * remembered body is returned again, marked as not modified, so callers can skip parsing
+ * and re-analysing it. Requests to the configured endpoints are hedged when they are slower
+ * than usual. Every endpoint has a circuit breaker: while it is open, requests are answered
+ * with the last good response instead of being sent to the struggling API. The requests
+ * in flight are bounded by a limit that adapts to the latency of the API. Each request is
+ * sent with a key from the configured pool, picked by the quota it has left today; a key
+ * the API reports as out of quota is set aside until the quota resets and the request is
+ * sent again with another key.
+ *
+ * @author Mohnish Mirchandani
+ */
+@Singleton
+public class YoutubeApiClient {
+
+    private static final String YOUTUBE_URL = "https://www.googleapis.com/youtube/v3";
+    private static final int MAX_LAST_RESPONSES = 2000;
+
+    private final WSClient ws;
+    private final Hedger hedger;
+    private final CircuitBreaker circuitBreaker;
+    private final OutboundLimiter limiter;
+    private final ApiKeyPool keyPool;
+    private final Map<String, YoutubeApiResponse> lastResponses =
+        new LinkedHashMap<String, YoutubeApiResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, YoutubeApiResponse> eldest) {
+                return size() > MAX_LAST_RESPONSES;
+            }
+        };
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for YoutubeApiClient.
+     *
+     * @param ws The WSClient for making HTTP requests.
+     * @param config The application configuration, read from {@code youtube.api.keys},
+     *               {@code youtube.api.quota}, {@code youtube.api.hedging},
+     *               {@code youtube.api.circuit-breaker} and {@code youtube.api.outbound}.
+     * @author Mohnish Mirchandani
+     */
+    @Inject
+    public YoutubeApiClient(WSClient ws, Config config) {
+        this.ws = ws;
+        this.hedger = new Hedger(config.getConfig("youtube.api.hedging"));
+        this.circuitBreaker = new CircuitBreaker(config.getConfig("youtube.api.circuit-breaker"));
+        this.limiter = new OutboundLimiter(config.getConfig("youtube.api.outbound"));
+        this.keyPool = new ApiKeyPool(config);
+    }
+
+    /**
+     * Sends a GET request to an endpoint of the YouTube Data API.
+     *
+     * @param path The endpoint path, e.g. "/search".
+     * @param params The query parameters, in the order they are sent. A "key" parameter is
+     *               replaced by a key from the pool.
+     * @return A CompletionStage containing the response. While the circuit of the endpoint
+     *         is open, or every key is out of quota, this is the last good response of the
+     *         request, or a failure if there is none.
+     * @author Mohnish Mirchandani
+     */
+    public CompletionStage<YoutubeApiResponse> get(String path, Map<String, String> params) {
+        String requestKey = requestKey(path, params);
+        EndpointStats endpointStats = stats.computeIfAbsent(path, p -> new EndpointStats());
+        endpointStats.requests.incrementAndGet();
+
+        YoutubeApiResponse previous;
+        synchronized (lastResponses) {
+            previous = lastResponses.get(requestKey);
+        }
+        ApiKeyPool.ApiKey apiKey = keyPool.acquire();
+        if (apiKey == null) {
+            endpointStats.quotaExhausted.incrementAndGet();
+            return previous != null
+                ? CompletableFuture.completedFuture(previous)
+                : CompletableFuture.failedFuture(new ApiKeyPool.QuotaExhaustedException(path));
+        }
+
+        WSRequest request = ws.url(YOUTUBE_URL + path);
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (!"key".equals(param.getKey())) {
+                request = request.addQueryParameter(param.getKey(), param.getValue());
+            }
+        }
+        request = request.addQueryParameter("key", apiKey.value);
+        if (previous != null && previous.getEtag() != null) {
+            endpointStats.conditional.incrementAndGet();
+            request = request.addHeader("If-None-Match", previous.getEtag());
+        }
+
+        WSRequest conditionalRequest = request;
+        return circuitBreaker.execute(
+            path,
+            // The primary and a hedge each take a slot of the limiter
+            () -> hedger.execute(path, () -> limiter.submit(() -> {
+                apiKey.spend(path);
+                return conditionalRequest.get();
+            })).thenApply(wsResponse -> {
+                if (wsResponse.getStatus() == 304 && previous != null) {
+                    endpointStats.notModified.incrementAndGet();
+                    YoutubeApiResponse revalidated = previous.revalidated();
+                    remember(requestKey, revalidated);
+                    return revalidated;
+                }
+                YoutubeApiResponse response = YoutubeApiResponse.from(wsResponse);
+                if (response.getStatus() == 200) {
+                    remember(requestKey, response);
+                }
+                return response;
+            }),
+            response -> response.getStatus() >= 500,
+            () -> previous
+        ).thenCompose(response -> {
+            if (!ApiKeyPool.isQuotaExceeded(response.getStatus(), parseBody(response))) {
+                return CompletableFuture.completedFuture(response);
+            }
+            // The count of this key was behind the API's; retry with the keys left
+            apiKey.quarantine();
+            endpointStats.quotaExceeded.incrementAndGet();
+            return get(path, params);
+        });
+    }
+
+    /**
+     * Gets the number of requests, conditional requests and 304 responses per endpoint,
+     * the hedging, circuit breaker and outbound limiter statistics, and the quota spent
+     * with each API key.
+     *
+     * @return The per-endpoint statistics as JSON.
+     * @author Mohnish Mirchandani
+     */
+    public ObjectNode stats() {
+        ObjectNode json = Json.newObject();
+        stats.forEach((path, endpointStats) -> json.set(path, endpointStats.toJson()));
+        synchronized (lastResponses) {
+            json.put("lastResponses", lastResponses.size());
+        }
+        json.set("hedging", hedger.stats());
+        json.set("circuitBreakers", circuitBreaker.stats());
+        json.set("outbound", limiter.stats());
+        json.set("keys", keyPool.stats());
+        return json;
+    }
+
+    private void remember(String requestKey, YoutubeApiResponse response) {
+        synchronized (lastResponses) {
+            lastResponses.put(requestKey, response);
+        }
+    }
+
+    private static JsonNode parseBody(YoutubeApiResponse response) {
+        if (response.getStatus() != 403) {
+            return null;
+        }
+        try {
+            return response.asJson();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Identifies a request by its path and parameters. The API key is left out, so a
+     * rotated key still matches the stored ETag.
+     */
+    private static String requestKey(String path, Map<String, String> params) {
+        Map<String, String> sorted = new TreeMap<>(params);
+        sorted.remove("key");
+        return path + "?" + sorted;
+    }
+
+    private static final class EndpointStats {
+
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong conditional = new AtomicLong();
+        final AtomicLong notModified = new AtomicLong();
+        final AtomicLong quotaExceeded = new AtomicLong();
+        final AtomicLong quotaExhausted = new AtomicLong();
+
+        ObjectNode toJson() {
+            ObjectNode json = Json.newObject();
+            long conditionalRequests = conditional.get();
+            json.put("requests", requests.get());
+            json.put("conditional", conditionalRequests);
+            json.put("notModified", notModified.get());
+            json.put(
+                "notModifiedRate",
+                conditionalRequests == 0 ? 0.0 : (double) notModified.get() / conditionalRequests
+            );
+            json.put("quotaExceeded", quotaExceeded.get());
+            json.put("quotaExhausted", quotaExhausted.get());
+            return json;
+        }
+    }
+}
@@ -7,12 +7,18 @@ import static play.test.Helpers.*;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.ConfigFactory;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import models.YoutubeApiResponse;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -23,7 +29,13 @@ import play.libs.ws.*;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.test.WithApplication;
+import services.CacheNamespace;
+import services.CachePolicy;
+import services.QueryNormalizer;
+import services.SingleFlight;
+import services.VideoIndex;
 import services.WordStatsService;
+import services.YoutubeApiClient;
 import services.YoutubeService;
 
 /**
@@ -53,6 +65,7 @@ public class YoutubeControllerTest {
     @Mock
     private AsyncCacheApi cache;
 
+    private VideoIndex videoIndex;
     private YoutubeController controller;
     private ObjectMapper objectMapper;
 
@@ -66,11 +79,15 @@ public class YoutubeControllerTest {
     @Before
     public void setup() {
         objectMapper = new ObjectMapper();
+        videoIndex = new VideoIndex(ConfigFactory.load());
         controller = new YoutubeController(
-            wsClient,
             wordStatsService,
             youtubeService,
-            cache
+            new CachePolicy(cache, ConfigFactory.load(), new SingleFlight()),
+            new SingleFlight(),
+            new YoutubeApiClient(wsClient, ConfigFactory.load()),
+            videoIndex,
+            new QueryNormalizer(ConfigFactory.load())
         );
     }
 
@@ -98,7 +115,7 @@ public class YoutubeControllerTest {
     @Test
     public void testWordStats() throws Exception {
         // Arrange
-        YoutubeController mockController = mock(YoutubeController.class);
+        YoutubeController mockController = spy(controller);
         String jsonResponse =
             "{" +
             "\"items\": [{" +
@@ -112,31 +129,30 @@ public class YoutubeControllerTest {
             "}}]}";
 
         // Mock the searchVideoCall response
-        when(wsResponse.getStatus()).thenReturn(200);
-        when(wsResponse.asJson()).thenReturn(
-            objectMapper.readTree(jsonResponse)
-        );
-        when(mockController.searchVideoCall("test")).thenReturn(
-            CompletableFuture.completedFuture(wsResponse)
-        );
-        when(mockController.getWordStats("test")).thenCallRealMethod();
+        doReturn(
+            CompletableFuture.completedFuture(
+                new YoutubeApiResponse(200, jsonResponse, System.currentTimeMillis())
+            )
+        ).when(mockController).searchVideoCall("test");
 
         // Act
-        CompletionStage<Result> result = mockController.getWordStats("test");
+        CompletionStage<Result> result = mockController.getWordStats(fakeRequest().build(), "test");
         Result resultValue = result.toCompletableFuture().get();
 
         // Assert
         assertEquals(OK, resultValue.status());
-        verify(wsResponse).getStatus();
-        verify(wsResponse).asJson();
 
         // Failed case
-        when(wsResponse.getStatus()).thenReturn(400);
-        result = mockController.getWordStats("test");
+        doReturn(
+            CompletableFuture.completedFuture(
+                new YoutubeApiResponse(400, "{}", System.currentTimeMillis())
+            )
+        ).when(mockController).searchVideoCall("test");
+        result = mockController.getWordStats(fakeRequest().build(), "test");
         resultValue = result.toCompletableFuture().get();
 
         assertNull(resultValue);
-        verify(wsResponse, times(2)).getStatus();
+        verify(mockController, times(2)).searchVideoCall("test");
     }
 
     /**
@@ -155,13 +171,8 @@ public class YoutubeControllerTest {
         ObjectNode modifiedResponse = objectMapper.createObjectNode();
         modifiedResponse.put("status", "success");
 
-        when(cache.getOrElseUpdate(eq(query), any(), anyInt())).thenAnswer(
-            invocation -> {
-                // Execute the Callable passed to getOrElseUpdate
-                java.util.concurrent.Callable<?> callable =
-                    invocation.getArgument(1);
-                return callable.call();
-            }
+        when(cache.get(CacheNamespace.SEARCH.key(query))).thenReturn(
+            CompletableFuture.completedFuture(Optional.empty())
         );
 
         // Setup mocks
@@ -173,20 +184,69 @@ public class YoutubeControllerTest {
             CompletableFuture.completedFuture(wsResponse)
         );
         when(wsResponse.getStatus()).thenReturn(200);
-        when(wsResponse.asJson()).thenReturn(mockJsonResponse);
+        when(wsResponse.getBody()).thenReturn(mockResponseJson);
         when(youtubeService.modifyResponse(any(ObjectNode.class))).thenReturn(
             CompletableFuture.completedFuture(modifiedResponse)
         );
 
         // Execute test
-        CompletionStage<Result> resultStage = controller.searchVideos(query);
+        CompletionStage<Result> resultStage = controller.searchVideos(fakeRequest().build(), query);
         Result result = resultStage.toCompletableFuture().get();
 
         // Verify
         assertEquals(200, result.status());
         verify(wsClient).url(contains("/youtube/v3/search"));
         verify(youtubeService).modifyResponse(any(ObjectNode.class));
-        verify(cache).getOrElseUpdate(eq(query), any(), anyInt());
+        verify(cache).get(CacheNamespace.SEARCH.key(query));
+    }
+
+    /**
+     * Tests that a conditional search request for results the client already holds is
+     * answered with 304 without enriching the results again.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testSearchVideos_NotModified() throws Exception {
+        String query = "test query";
+        String mockResponseJson =
+            "{\"items\": [{\"id\": {\"videoId\": \"123\"}, \"snippet\": {\"title\": \"Test Video\"}}]}";
+
+        when(cache.get(CacheNamespace.SEARCH.key(query))).thenReturn(
+            CompletableFuture.completedFuture(Optional.empty())
+        );
+        when(wsClient.url(anyString())).thenReturn(wsRequest);
+        when(wsRequest.addQueryParameter(anyString(), anyString())).thenReturn(
+            wsRequest
+        );
+        when(wsRequest.get()).thenReturn(
+            CompletableFuture.completedFuture(wsResponse)
+        );
+        when(wsResponse.getStatus()).thenReturn(200);
+        when(wsResponse.getBody()).thenReturn(mockResponseJson);
+        when(youtubeService.modifyResponse(any(ObjectNode.class))).thenReturn(
+            CompletableFuture.completedFuture(objectMapper.createObjectNode())
+        );
+
+        Result first = controller
+            .searchVideos(fakeRequest().build(), query)
+            .toCompletableFuture()
+            .get();
+        String etag = first.header(Http.HeaderNames.ETAG).orElseThrow();
+        Result second = controller
+            .searchVideos(
+                fakeRequest().header(Http.HeaderNames.IF_NONE_MATCH, etag).build(),
+                query
+            )
+            .toCompletableFuture()
+            .get();
+
+        assertEquals(200, first.status());
+        assertTrue(first.header(Http.HeaderNames.CACHE_CONTROL).isPresent());
+        assertEquals(304, second.status());
+        assertEquals(Optional.of(etag), second.header(Http.HeaderNames.ETAG));
+        verify(youtubeService, times(1)).modifyResponse(any(ObjectNode.class));
     }
 
     /**
@@ -212,14 +272,13 @@ public class YoutubeControllerTest {
             "}," +
             "\"statistics\": {\"viewCount\": \"1000\"}" +
             "}]}";
-        JsonNode mockJsonResponse = objectMapper.readTree(mockResponseJson);
 
         // Setup mocks
         when(youtubeService.getVideo(videoId)).thenReturn(
-            CompletableFuture.completedFuture(wsResponse)
+            CompletableFuture.completedFuture(
+                new YoutubeApiResponse(200, mockResponseJson, System.currentTimeMillis())
+            )
         );
-        when(wsResponse.getStatus()).thenReturn(200);
-        when(wsResponse.asJson()).thenReturn(mockJsonResponse);
 
         // Execute test
         CompletionStage<Result> resultStage = controller.getVideoDetails(
@@ -230,8 +289,6 @@ public class YoutubeControllerTest {
         // Verify
         assertEquals(200, result.status());
         verify(youtubeService).getVideo(videoId);
-        verify(wsResponse).getStatus();
-        verify(wsResponse).asJson();
     }
 
     /**
@@ -259,15 +316,11 @@ public class YoutubeControllerTest {
                 "\"subscriberCount\": \"1000\"," +
                 "\"viewCount\": \"5000\"," +
                 "\"videoCount\": \"100\"" +
-                "}" +
+                "}," +
+                "\"contentDetails\": {\"relatedPlaylists\": {\"uploads\": \"UUchannel123\"}}" +
                 "}]}";
 
             String mockVideosJson = "{\"items\": []}";
-            JsonNode mockChannelResponse = objectMapper.readTree(
-                mockChannelJson
-            );
-            JsonNode mockVideosResponse = objectMapper.readTree(mockVideosJson);
-
             // Create separate response mocks for each call
             WSResponse channelResponse = mock(WSResponse.class);
             WSResponse videosResponse = mock(WSResponse.class);
@@ -276,24 +329,39 @@ public class YoutubeControllerTest {
             WSRequest channelRequest = mock(WSRequest.class);
             WSRequest videosRequest = mock(WSRequest.class);
 
+            when(cache.get(CacheNamespace.CHANNEL.key(channelId))).thenReturn(
+                CompletableFuture.completedFuture(Optional.empty())
+            );
+
             // Setup channel request and response
             when(wsClient.url(contains("/channels"))).thenReturn(
                 channelRequest
             );
+            when(
+                channelRequest.addQueryParameter(anyString(), anyString())
+            ).thenReturn(channelRequest);
             when(channelRequest.get()).thenReturn(
                 CompletableFuture.completedFuture(channelResponse)
             );
-            when(channelResponse.asJson()).thenReturn(mockChannelResponse);
+            when(channelResponse.getStatus()).thenReturn(200);
+            when(channelResponse.getBody()).thenReturn(mockChannelJson);
 
-            // Setup videos request and response
-            when(wsClient.url(contains("/search"))).thenReturn(videosRequest);
+            // Setup uploads playlist request and response
+            when(wsClient.url(contains("/playlistItems"))).thenReturn(
+                videosRequest
+            );
+            when(
+                videosRequest.addQueryParameter(anyString(), anyString())
+            ).thenReturn(videosRequest);
             when(videosRequest.get()).thenReturn(
                 CompletableFuture.completedFuture(videosResponse)
             );
-            when(videosResponse.asJson()).thenReturn(mockVideosResponse);
+            when(videosResponse.getStatus()).thenReturn(200);
+            when(videosResponse.getBody()).thenReturn(mockVideosJson);
 
             // Execute test
             CompletionStage<Result> resultStage = controller.getChannelProfile(
+                fakeRequest().build(),
                 channelId
             );
             Result result = resultStage.toCompletableFuture().get();
@@ -303,15 +371,135 @@ public class YoutubeControllerTest {
 
             // Verify API calls
             verify(wsClient).url(contains("/channels"));
-            verify(wsClient).url(contains("/search"));
+            verify(wsClient).url(contains("/playlistItems"));
+            verify(videosRequest).addQueryParameter("playlistId", "UUchannel123");
+            verify(wsClient, never()).url(contains("/search"));
+            verify(channelRequest).addQueryParameter("id", channelId);
             verify(channelRequest).get();
-            verify(channelResponse).asJson();
+            verify(channelResponse).getBody();
         } catch (NullPointerException e) {
             e.printStackTrace();
             throw e;
         }
     }
 
+    /**
+     * Tests that the channel profile pipeline never blocks the thread completing the
+     * API responses. All responses are completed from a single thread, so a blocking
+     * callback would stall the remaining requests until the timeout.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Pretty Kotian
+     */
+    @Test
+    public void testGetChannelProfile_NonBlockingUnderLoad() throws Exception {
+        String mockChannelJson =
+            "{\"items\": [{\"id\": \"channel123\", \"snippet\": {\"title\": \"Test Channel\"}," +
+            "\"contentDetails\": {\"relatedPlaylists\": {\"uploads\": \"UUchannel123\"}}}]}";
+        String mockPlaylistJson =
+            "{\"items\": [" +
+            "{\"snippet\": {\"title\": \"First\", \"description\": \"\", \"thumbnails\": {\"default\": {\"url\": \"u1\"}}, \"resourceId\": {\"videoId\": \"v1\"}}}," +
+            "{\"snippet\": {\"title\": \"Private video\", \"description\": \"\", \"resourceId\": {\"videoId\": \"v2\"}}}" +
+            "]}";
+
+        CompletableFuture<WSResponse> channelFuture = new CompletableFuture<>();
+        CompletableFuture<WSResponse> playlistFuture = new CompletableFuture<>();
+
+        WSRequest channelRequest = mock(WSRequest.class);
+        WSRequest playlistRequest = mock(WSRequest.class);
+        WSResponse channelResponse = mock(WSResponse.class);
+        WSResponse playlistResponse = mock(WSResponse.class);
+
+        when(cache.get(CacheNamespace.CHANNEL.key("channel123"))).thenReturn(
+            CompletableFuture.completedFuture(Optional.empty())
+        );
+        when(wsClient.url(contains("/channels"))).thenReturn(channelRequest);
+        when(wsClient.url(contains("/playlistItems"))).thenReturn(playlistRequest);
+        when(channelRequest.addQueryParameter(anyString(), anyString())).thenReturn(
+            channelRequest
+        );
+        when(channelRequest.get()).thenReturn(channelFuture);
+        when(playlistRequest.addQueryParameter(anyString(), anyString())).thenReturn(
+            playlistRequest
+        );
+        when(playlistRequest.get()).thenReturn(playlistFuture);
+        when(channelResponse.getStatus()).thenReturn(200);
+        when(channelResponse.getBody()).thenReturn(mockChannelJson);
+        when(playlistResponse.getStatus()).thenReturn(200);
+        when(playlistResponse.getBody()).thenReturn(mockPlaylistJson);
+
+        int requests = 50;
+        List<CompletableFuture<Result>> results = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            results.add(controller.getChannelProfile(fakeRequest().build(), "channel123").toCompletableFuture());
+        }
+        for (CompletableFuture<Result> result : results) {
+            assertFalse(result.isDone());
+        }
+
+        ExecutorService ioThread = Executors.newSingleThreadExecutor();
+        try {
+            ioThread.execute(() -> channelFuture.complete(channelResponse));
+            ioThread.execute(() -> playlistFuture.complete(playlistResponse));
+
+            for (CompletableFuture<Result> result : results) {
+                assertEquals(200, result.get(5, TimeUnit.SECONDS).status());
+            }
+        } finally {
+            ioThread.shutdownNow();
+        }
+
+        // Concurrent profiles share one load: one page of the uploads playlist, no
+        // per-video or /search calls
+        verify(channelRequest).get();
+        verify(playlistRequest).addQueryParameter("playlistId", "UUchannel123");
+        verify(playlistRequest).get();
+        verify(wsClient, never()).url(contains("/search"));
+    }
+
+    /**
+     * Tests that a conditional request for a cached channel profile is answered with 304
+     * from the cached profile, without calling the YouTube API, and that Last-Modified
+     * carries the time the profile was fetched.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Pretty Kotian
+     */
+    @Test
+    public void testGetChannelProfile_NotModifiedFromCache() throws Exception {
+        long fetchedAt = System.currentTimeMillis() - 60_000;
+        String profileJson =
+            "{\"channel\": {\"items\": [{\"id\": \"channel123\", \"snippet\": {\"title\": \"Test Channel\"}}]}," +
+            "\"latestVideos\": []}";
+        when(cache.get(CacheNamespace.CHANNEL.key("channel123"))).thenReturn(
+            CompletableFuture.completedFuture(
+                Optional.of(new YoutubeApiResponse(200, profileJson, fetchedAt))
+            )
+        );
+
+        Result first = controller
+            .getChannelProfile(fakeRequest().build(), "channel123")
+            .toCompletableFuture()
+            .get();
+        String etag = first.header(Http.HeaderNames.ETAG).orElseThrow();
+        Result second = controller
+            .getChannelProfile(
+                fakeRequest().header(Http.HeaderNames.IF_NONE_MATCH, etag).build(),
+                "channel123"
+            )
+            .toCompletableFuture()
+            .get();
+
+        assertEquals(200, first.status());
+        assertTrue(first.header(Http.HeaderNames.LAST_MODIFIED).isPresent());
+        assertEquals(304, second.status());
+        assertEquals(
+            first.header(Http.HeaderNames.LAST_MODIFIED),
+            second.header(Http.HeaderNames.LAST_MODIFIED)
+        );
+        verify(wsClient, never()).url(anyString());
+    }
+
     /**
      * Tests the searchVideos method for an API error response.
      *
@@ -322,13 +510,8 @@ public class YoutubeControllerTest {
     public void testSearchVideos_ApiError() throws Exception {
         String query = "query";
         // Setup cache mock
-        when(cache.getOrElseUpdate(eq(query), any(), anyInt())).thenAnswer(
-            invocation -> {
-                // Execute the Callable passed to getOrElseUpdate
-                java.util.concurrent.Callable<?> callable =
-                    invocation.getArgument(1);
-                return callable.call();
-            }
+        when(cache.get(CacheNamespace.SEARCH.key(query))).thenReturn(
+            CompletableFuture.completedFuture(Optional.empty())
         );
         // Setup mocks for error scenario
         when(wsClient.url(anyString())).thenReturn(wsRequest);
@@ -342,13 +525,13 @@ public class YoutubeControllerTest {
         when(wsResponse.getBody()).thenReturn("API Error");
 
         // Execute test
-        CompletionStage<Result> resultStage = controller.searchVideos("query");
+        CompletionStage<Result> resultStage = controller.searchVideos(fakeRequest().build(), "query");
         Result result = resultStage.toCompletableFuture().get();
 
         // Verify
         assertEquals(500, result.status());
         verify(wsClient).url(contains("/youtube/v3/search"));
-        verify(cache).getOrElseUpdate(eq(query), any(), anyInt());
+        verify(cache).get(CacheNamespace.SEARCH.key(query));
         verify(wsResponse).getBody();
     }
 
@@ -362,13 +545,12 @@ public class YoutubeControllerTest {
     public void testGetVideoDetails_NotFound() throws Exception {
         String videoId = "nonexistent";
         String mockResponseJson = "{\"items\": []}";
-        JsonNode mockJsonResponse = objectMapper.readTree(mockResponseJson);
 
         when(youtubeService.getVideo(videoId)).thenReturn(
-            CompletableFuture.completedFuture(wsResponse)
+            CompletableFuture.completedFuture(
+                new YoutubeApiResponse(200, mockResponseJson, System.currentTimeMillis())
+            )
         );
-        when(wsResponse.getStatus()).thenReturn(200);
-        when(wsResponse.asJson()).thenReturn(mockJsonResponse);
 
         CompletionStage<Result> resultStage = controller.getVideoDetails(
             videoId
@@ -377,4 +559,92 @@ public class YoutubeControllerTest {
 
         assertEquals(404, result.status());
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that a tag page is answered from the VideoIndex when enough videos carry the
+     * tag, without a YouTube search.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Elston Farel
+     */
+    @Test
+    public void testGetTagProfile_AnsweredFromIndex() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            videoIndex.add(
+                objectMapper.readTree(
+                    "{\"id\": \"video" + i + "\", \"snippet\": {" +
+                    "\"title\": \"Video " + i + "\", \"description\": \"About Java\"," +
+                    "\"tags\": [\"Java\"]," +
+                    "\"thumbnails\": {\"default\": {\"url\": \"http://example.com/t.jpg\"}}}}"
+                )
+            );
+        }
+
+        Result result = controller
+            .getTagProfile("java")
+            .toCompletableFuture()
+            .get();
+
+        assertEquals(OK, result.status());
+        assertTrue(contentAsString(result).contains("Video 9"));
+        verify(wsClient, never()).url(anyString());
+    }
+
+    /**
+     * Tests that a tag page the VideoIndex cannot answer is served from the tag namespace
+     * of the cache, without a YouTube search.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Elston Farel
+     */
+    @Test
+    public void testGetTagProfile_AnsweredFromCache() throws Exception {
+        String searchJson =
+            "{\"items\": [{\"id\": {\"videoId\": \"cached1\"}, \"snippet\": {" +
+            "\"title\": \"Cached Video\", \"description\": \"About Java\"," +
+            "\"thumbnails\": {\"default\": {\"url\": \"http://example.com/t.jpg\"}}}}]}";
+        when(cache.get(CacheNamespace.TAG.key("java"))).thenReturn(
+            CompletableFuture.completedFuture(
+                Optional.of(new YoutubeApiResponse(200, searchJson, System.currentTimeMillis()))
+            )
+        );
+
+        Result result = controller
+            .getTagProfile("java")
+            .toCompletableFuture()
+            .get();
+
+        assertEquals(OK, result.status());
+        assertTrue(contentAsString(result).contains("Cached Video"));
+        verify(wsClient, never()).url(anyString());
+    }
+
+    /**
+     * Tests that a keyword page is answered from the VideoIndex when enough videos mention
+     * the keywords in their title or description, without a YouTube search.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Elston Farel
+     */
+    @Test
+    public void testGetKeywordProfile_AnsweredFromIndex() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            videoIndex.add(
+                objectMapper.readTree(
+                    "{\"id\": \"video" + i + "\", \"snippet\": {" +
+                    "\"title\": \"Video " + i + "\", \"description\": \"Learning Java streams\"," +
+                    "\"thumbnails\": {\"default\": {\"url\": \"http://example.com/t.jpg\"}}}}"
+                )
+            );
+        }
+
+        Result result = controller
+            .getKeywordProfile("java streams")
+            .toCompletableFuture()
+            .get();
+
+        assertEquals(OK, result.status());
+        assertTrue(contentAsString(result).contains("Video 9"));
+        verify(wsClient, never()).url(anyString());
+    }
+}
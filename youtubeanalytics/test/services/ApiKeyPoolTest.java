@@ -0,0 +1,90 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import play.libs.Json;
+
+/**
+ * Test class for ApiKeyPool.
+ * This class contains unit tests for the quota-weighted rotation of the API keys.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class ApiKeyPoolTest {
+
+    private static Clock noon() {
+        Instant instant = ZonedDateTime.of(2024, 3, 1, 12, 0, 0, 0, QuotaTracker.QUOTA_ZONE).toInstant();
+        return Clock.fixed(instant, ZoneOffset.UTC);
+    }
+
+    /**
+     * Tests that keys are picked in proportion to the quota they have left.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testRotationIsWeightedByRemainingQuota() {
+        ApiKeyPool pool = new ApiKeyPool(Arrays.asList("key-aaaa", "key-bbbb"), 1000, noon());
+        ApiKeyPool.ApiKey first = pool.acquire();
+        for (int i = 0; i < 9; i++) {
+            first.spend("/search");
+        }
+
+        Map<String, Integer> picks = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            picks.merge(pool.acquire().value, 1, Integer::sum);
+        }
+
+        // 100 units left against 1000: about one pick in eleven
+        assertTrue(picks.getOrDefault(first.value, 0) < 200);
+        assertEquals(1000, picks.values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * Tests that a quarantined key is no longer picked, and that no key is returned once
+     * every key is quarantined.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testQuarantinedKeyIsSkippedUntilReset() {
+        ApiKeyPool pool = new ApiKeyPool(Arrays.asList("key-aaaa", "key-bbbb"), 1000, noon());
+        ApiKeyPool.ApiKey quarantined = pool.acquire();
+        quarantined.quarantine();
+
+        for (int i = 0; i < 100; i++) {
+            assertNotSame(quarantined, pool.acquire());
+        }
+        pool.acquire().quarantine();
+        assertNull(pool.acquire());
+
+        JsonNode stats = pool.stats().get("...aaaa");
+        assertTrue(stats.get("quarantined").asBoolean());
+        assertEquals(1, stats.get("quarantines").asLong());
+    }
+
+    /**
+     * Tests that only a 403 with a quota reason is recognised as an exhausted key.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testRecognisesQuotaExceededResponses() {
+        JsonNode quotaExceeded = Json.parse("{\"error\":{\"code\":403,\"errors\":[{\"reason\":\"quotaExceeded\"}]}}");
+        JsonNode forbidden = Json.parse("{\"error\":{\"code\":403,\"errors\":[{\"reason\":\"forbidden\"}]}}");
+
+        assertTrue(ApiKeyPool.isQuotaExceeded(403, quotaExceeded));
+        assertFalse(ApiKeyPool.isQuotaExceeded(403, forbidden));
+        assertFalse(ApiKeyPool.isQuotaExceeded(400, quotaExceeded));
+        assertFalse(ApiKeyPool.isQuotaExceeded(403, null));
+    }
+}
@@ -0,0 +1,177 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import models.YoutubeApiResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for CachePolicy.
+ * This class contains unit tests for namespaced keys and status-aware TTLs.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class CachePolicyTest {
+
+    private CachePolicy cachePolicy;
+
+    /**
+     * Sets up the policy on top of a real tiered cache.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Before
+    public void setUp() {
+        Config config = ConfigFactory.load();
+        cachePolicy = new CachePolicy(new TieredAsyncCache(config), config, new SingleFlight());
+    }
+
+    /**
+     * Tests that error responses get the short negative TTLs.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testTtlForStatus() {
+        assertEquals(
+            Duration.ofMinutes(15),
+            cachePolicy.ttlFor(CacheNamespace.SEARCH, response(200))
+        );
+        assertEquals(
+            Duration.ofHours(1),
+            cachePolicy.ttlFor(CacheNamespace.VIDEO, response(200))
+        );
+        assertEquals(
+            Duration.ofMinutes(1),
+            cachePolicy.ttlFor(CacheNamespace.SEARCH, response(403))
+        );
+        assertEquals(
+            Duration.ofSeconds(10),
+            cachePolicy.ttlFor(CacheNamespace.SEARCH, response(503))
+        );
+    }
+
+    /**
+     * Tests that the same key in two namespaces is loaded and cached separately.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testNamespacesDoNotShareKeys() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            cachePolicy.fetch(CacheNamespace.SEARCH, "java", () -> {
+                loads.incrementAndGet();
+                return CompletableFuture.completedFuture(response(200));
+            }).toCompletableFuture().get();
+            cachePolicy.fetch(CacheNamespace.VIDEO, "java", () -> {
+                loads.incrementAndGet();
+                return CompletableFuture.completedFuture(response(200));
+            }).toCompletableFuture().get();
+        }
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cachePolicy.stats().get("search").get("hits").asLong());
+        assertEquals(1, cachePolicy.stats().get("video").get("hits").asLong());
+    }
+
+    /**
+     * Tests that a quota error is stored as a negative entry.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testQuotaErrorIsStoredAsNegativeEntry() throws Exception {
+        YoutubeApiResponse result = cachePolicy.fetch(
+            CacheNamespace.SEARCH,
+            "quota",
+            () -> CompletableFuture.completedFuture(response(403))
+        ).toCompletableFuture().get();
+
+        assertEquals(403, result.getStatus());
+        assertEquals(1, cachePolicy.stats().get("search").get("negativeStores").asLong());
+        assertEquals(0, cachePolicy.stats().get("search").get("stores").asLong());
+    }
+
+    /**
+     * Tests that an entry past its soft TTL is served stale and refreshed once in the background.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testStaleEntryIsServedWhileRefreshing() throws Exception {
+        long sixteenMinutesAgo = System.currentTimeMillis() - Duration.ofMinutes(16).toMillis();
+        YoutubeApiResponse old = new YoutubeApiResponse(200, "{\"v\":1}", sixteenMinutesAgo);
+        CompletableFuture<YoutubeApiResponse> refreshed = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        cachePolicy.fetch(CacheNamespace.SEARCH, "stale", () -> CompletableFuture.completedFuture(old))
+            .toCompletableFuture().get();
+        YoutubeApiResponse served = cachePolicy.fetch(CacheNamespace.SEARCH, "stale", () -> {
+            loads.incrementAndGet();
+            return refreshed;
+        }).toCompletableFuture().get();
+        cachePolicy.fetch(CacheNamespace.SEARCH, "stale", () -> {
+            loads.incrementAndGet();
+            return refreshed;
+        }).toCompletableFuture().get();
+
+        assertSame(old, served);
+        assertTrue(cachePolicy.isStale(CacheNamespace.SEARCH, served));
+        assertEquals(1, loads.get());
+
+        refreshed.complete(response(200));
+        YoutubeApiResponse fresh = cachePolicy.fetch(CacheNamespace.SEARCH, "stale", () -> {
+            throw new IllegalStateException("should be cached");
+        }).toCompletableFuture().get();
+        assertFalse(cachePolicy.isStale(CacheNamespace.SEARCH, fresh));
+    }
+
+    /**
+     * Tests that a hot entry close to expiry is refreshed once it has enough hits, and
+     * that the fresh replacement is served without another refresh.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testHotEntryIsRefreshedAhead() throws Exception {
+        long thirteenMinutesAgo = System.currentTimeMillis() - Duration.ofMinutes(13).toMillis();
+        YoutubeApiResponse old = new YoutubeApiResponse(200, "{\"v\":1}", thirteenMinutesAgo);
+        YoutubeApiResponse replacement = response(200);
+        AtomicInteger loads = new AtomicInteger();
+
+        cachePolicy.fetch(CacheNamespace.SEARCH, "hot", () -> CompletableFuture.completedFuture(old))
+            .toCompletableFuture().get();
+        for (int i = 0; i < 3; i++) {
+            cachePolicy.fetch(CacheNamespace.SEARCH, "hot", () -> {
+                loads.incrementAndGet();
+                return CompletableFuture.completedFuture(replacement);
+            }).toCompletableFuture().get();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cachePolicy.stats().get("search").get("refreshes").asLong());
+        for (int i = 0; i < 3; i++) {
+            YoutubeApiResponse served = cachePolicy.fetch(CacheNamespace.SEARCH, "hot", () -> {
+                throw new IllegalStateException("should be cached");
+            }).toCompletableFuture().get();
+            assertSame(replacement, served);
+        }
+        assertEquals(1, cachePolicy.stats().get("search").get("refreshes").asLong());
+    }
+
+    private static YoutubeApiResponse response(int status) {
+        return new YoutubeApiResponse(status, "{}", System.currentTimeMillis());
+    }
+}
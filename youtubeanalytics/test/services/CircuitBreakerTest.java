@@ -0,0 +1,111 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Test class for CircuitBreaker.
+ * This class contains unit tests for the per-endpoint circuit breakers.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class CircuitBreakerTest {
+
+    private static CircuitBreaker circuitBreaker(String openDuration) {
+        return new CircuitBreaker(
+            ConfigFactory.parseString(
+                "enabled = true, failure-threshold = 2, open-duration = " + openDuration
+            )
+        );
+    }
+
+    private static CompletionStage<Integer> respond(CircuitBreaker breaker, int status) {
+        return breaker.execute(
+            "/search",
+            () -> CompletableFuture.completedFuture(status),
+            response -> response >= 500,
+            () -> null
+        );
+    }
+
+    /**
+     * Tests that consecutive failures open the circuit, and that an open circuit answers
+     * with the fallback, or fails fast without one, instead of sending the request.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testOpensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker breaker = circuitBreaker("1m");
+        respond(breaker, 503);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state("/search"));
+        respond(breaker, 500);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state("/search"));
+
+        AtomicInteger sent = new AtomicInteger();
+        CompletionStage<Integer> fallback = breaker.execute(
+            "/search",
+            () -> CompletableFuture.completedFuture(sent.incrementAndGet()),
+            response -> false,
+            () -> 304
+        );
+        assertEquals(304, (int) fallback.toCompletableFuture().get());
+        try {
+            respond(breaker, 200).toCompletableFuture().get();
+            fail("An open circuit without a fallback should fail fast");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CircuitBreaker.CircuitOpenException);
+        }
+
+        assertEquals(0, sent.get());
+        assertEquals(1, breaker.stats().get("/search").get("fallbackHits").asLong());
+        assertEquals(1, breaker.stats().get("/search").get("rejected").asLong());
+        assertEquals("OPEN", breaker.stats().get("/search").get("state").asText());
+    }
+
+    /**
+     * Tests that a success resets the count of consecutive failures.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testSuccessResetsFailures() {
+        CircuitBreaker breaker = circuitBreaker("1m");
+        respond(breaker, 503);
+        respond(breaker, 200);
+        respond(breaker, 503);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state("/search"));
+        assertEquals(0, breaker.stats().get("/search").get("opened").asLong());
+    }
+
+    /**
+     * Tests that after the open duration a probe is let through, which reopens the circuit
+     * when it fails and closes it when it succeeds.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testProbeAfterOpenDuration() {
+        CircuitBreaker breaker = circuitBreaker("0ms");
+        respond(breaker, 503);
+        respond(breaker, 503);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state("/search"));
+
+        respond(breaker, 503);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state("/search"));
+        respond(breaker, 200);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state("/search"));
+
+        assertEquals(2, breaker.stats().get("/search").get("opened").asLong());
+        assertEquals(2, breaker.stats().get("/search").get("halfOpened").asLong());
+        assertEquals(1, breaker.stats().get("/search").get("closed").asLong());
+    }
+}
@@ -0,0 +1,82 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Test class for Hedger.
+ * This class contains unit tests for hedged requests.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class HedgerTest {
+
+    private static Hedger hedger(double budgetPercent) {
+        return new Hedger(
+            ConfigFactory.parseString(
+                "enabled = true, paths = [\"/videos\"], percentile = 0.95, min-samples = 1, " +
+                "budget-percent = " + budgetPercent
+            )
+        );
+    }
+
+    /**
+     * Tests that a request slower than the recent latencies is hedged and that the hedge
+     * answers when the original does not.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testSlowRequestIsHedged() throws Exception {
+        Hedger hedger = hedger(100);
+        hedger.execute("/videos", () -> CompletableFuture.completedFuture("warm-up"));
+        CompletableFuture<String> stuck = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletionStage<String> result = hedger.execute("/videos", () ->
+            calls.incrementAndGet() == 1 ? stuck : CompletableFuture.completedFuture("hedge")
+        );
+
+        assertEquals("hedge", result.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        stuck.complete("original");
+        assertEquals(2, calls.get());
+        assertEquals(1, hedger.stats().get("/videos").get("hedgeWins").asLong());
+        assertEquals(0.5, hedger.stats().get("/videos").get("hedgeRate").asDouble(), 1e-9);
+    }
+
+    /**
+     * Tests that no hedge is sent once the budget is used up, and that other endpoints are
+     * never hedged.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testHedgesRespectBudgetAndPaths() throws Exception {
+        Hedger hedger = hedger(0);
+        hedger.execute("/videos", () -> CompletableFuture.completedFuture("warm-up"));
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletionStage<String> videos = hedger.execute("/videos", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        CompletionStage<String> search = hedger.execute("/search", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        Thread.sleep(200);
+
+        assertFalse(videos.toCompletableFuture().isDone());
+        assertFalse(search.toCompletableFuture().isDone());
+        assertEquals(2, calls.get());
+        assertEquals(0, hedger.stats().get("/videos").get("hedges").asLong());
+        assertFalse(hedger.stats().has("/search"));
+    }
+}
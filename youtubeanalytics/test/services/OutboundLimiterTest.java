@@ -0,0 +1,128 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Test class for OutboundLimiter.
+ * This class contains unit tests for the adaptive limit of the requests in flight.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class OutboundLimiterTest {
+
+    private static OutboundLimiter limiter(String limits) {
+        return new OutboundLimiter(
+            ConfigFactory.parseString(
+                "enabled = true, max-wait = 2s, latency-tolerance = 2, " + limits
+            )
+        );
+    }
+
+    /**
+     * Tests that requests over the limit wait, and are sent in order as slots free up.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testRequestsOverLimitWait() throws Exception {
+        OutboundLimiter limiter = limiter("initial-concurrent = 1, min-concurrent = 1, max-concurrent = 1");
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        limiter.submit(() -> {
+            sent.incrementAndGet();
+            return first;
+        });
+        CompletionStage<Integer> second = limiter.submit(
+            () -> CompletableFuture.completedFuture(sent.incrementAndGet())
+        );
+
+        assertEquals(1, sent.get());
+        assertEquals(1, limiter.stats().get("waiting").asInt());
+
+        first.complete(1);
+        assertEquals(2, (int) second.toCompletableFuture().get());
+        assertEquals(0, limiter.stats().get("inFlight").asInt());
+        assertEquals(1, limiter.stats().get("queued").asLong());
+    }
+
+    /**
+     * Tests that a request waiting longer than the maximum wait fails without being sent.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testQueuedRequestFailsAfterMaxWait() throws Exception {
+        OutboundLimiter limiter = new OutboundLimiter(
+            ConfigFactory.parseString(
+                "enabled = true, initial-concurrent = 1, min-concurrent = 1, max-concurrent = 1, "
+                    + "max-wait = 10ms, latency-tolerance = 2"
+            )
+        );
+        AtomicInteger sent = new AtomicInteger();
+        limiter.submit(() -> {
+            sent.incrementAndGet();
+            return new CompletableFuture<Integer>();
+        });
+        CompletionStage<Integer> queued = limiter.submit(() -> {
+            sent.incrementAndGet();
+            return new CompletableFuture<Integer>();
+        });
+
+        try {
+            queued.toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("A request waiting longer than max-wait should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, sent.get());
+        assertEquals(1, limiter.stats().get("timedOut").asLong());
+    }
+
+    /**
+     * Tests that slow and failed requests shrink the limit down to its minimum.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testSlowResponsesShrinkLimit() {
+        OutboundLimiter limiter = limiter("initial-concurrent = 20, min-concurrent = 4, max-concurrent = 64");
+        limiter.onSample(TimeUnit.MILLISECONDS.toNanos(100), false, 10);
+        limiter.onSample(TimeUnit.MILLISECONDS.toNanos(500), false, 10);
+
+        assertEquals(18, limiter.currentLimit());
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(0, true, 10);
+        }
+        assertEquals(4, limiter.currentLimit());
+    }
+
+    /**
+     * Tests that fast requests only raise the limit while it is busy, and not past its maximum.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testFastResponsesGrowLimitOnlyWhenBusy() {
+        OutboundLimiter limiter = limiter("initial-concurrent = 10, min-concurrent = 4, max-concurrent = 12");
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(TimeUnit.MILLISECONDS.toNanos(100), false, 1);
+        }
+        assertEquals(10, limiter.currentLimit());
+
+        for (int i = 0; i < 1000; i++) {
+            limiter.onSample(TimeUnit.MILLISECONDS.toNanos(100), false, 12);
+        }
+        assertEquals(12, limiter.currentLimit());
+    }
+}
@@ -0,0 +1,71 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+/**
+ * Test class for QueryNormalizer.
+ * This class contains unit tests for the canonicalization of search queries.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class QueryNormalizerTest {
+
+    private static QueryNormalizer normalizer(boolean ignoreStopwords) {
+        return new QueryNormalizer(
+            ConfigFactory.parseString("youtube.query.ignore-stopwords = " + ignoreStopwords)
+        );
+    }
+
+    /**
+     * Tests that case, surrounding and repeated whitespace and compatibility characters
+     * do not change the canonical query.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testEquivalentSpellingsShareCanonicalQuery() {
+        QueryNormalizer normalizer = normalizer(false);
+
+        assertEquals("java tutorial", normalizer.normalize("Java   Tutorial "));
+        assertEquals("java tutorial", normalizer.normalize("JAVA\ttutorial"));
+        // Fullwidth letters are folded by NFKC
+        assertEquals("java", normalizer.normalize("Ｊａｖａ"));
+        assertEquals("the java tutorial", normalizer.normalize("The Java tutorial"));
+    }
+
+    /**
+     * Tests that stopwords are dropped only when configured, and never from a query made
+     * only of stopwords.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testStopwordsAreOptional() {
+        QueryNormalizer normalizer = normalizer(true);
+
+        assertEquals("java tutorial", normalizer.normalize("The Java tutorial"));
+        assertEquals("to be or", normalizer.normalize("To be OR"));
+    }
+
+    /**
+     * Tests that the dedup ratio counts queries reusing the slot of another spelling.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testDedupRatio() {
+        QueryNormalizer normalizer = normalizer(false);
+
+        normalizer.canonicalize("Java");
+        normalizer.canonicalize("java ");
+        normalizer.canonicalize("Java");
+        normalizer.canonicalize("scala");
+
+        assertEquals(4, normalizer.stats().get("queries").asLong());
+        assertEquals(1, normalizer.stats().get("deduplicated").asLong());
+        assertEquals(0.25, normalizer.stats().get("dedupRatio").asDouble(), 1e-9);
+    }
+}
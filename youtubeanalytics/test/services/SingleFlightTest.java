@@ -0,0 +1,67 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Test class for SingleFlight.
+ * This class contains unit tests for coalescing of concurrent identical requests.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class SingleFlightTest {
+
+    /**
+     * Tests that a call arriving while the first one is in flight shares its result.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testConcurrentCallsShareOneRun() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletionStage<String> first = singleFlight.execute("search", "java", () -> {
+            runs.incrementAndGet();
+            return upstream;
+        });
+        CompletionStage<String> second = singleFlight.execute("search", "java", () -> {
+            runs.incrementAndGet();
+            return upstream;
+        });
+        upstream.complete("result");
+
+        assertEquals("result", first.toCompletableFuture().get());
+        assertEquals("result", second.toCompletableFuture().get());
+        assertEquals(1, runs.get());
+        assertEquals(1, singleFlight.stats().get("search").get("coalesced").asLong());
+        assertEquals(0.5, singleFlight.stats().get("search").get("coalescingRate").asDouble(), 0.0001);
+    }
+
+    /**
+     * Tests that a new run starts once the previous one has completed.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testCompletedRunIsNotReused() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger runs = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            singleFlight.execute("search", "java", () ->
+                CompletableFuture.completedFuture(runs.incrementAndGet())
+            ).toCompletableFuture().get();
+        }
+
+        assertEquals(2, runs.get());
+        assertEquals(0, singleFlight.stats().get("inFlight").asInt());
+    }
+}
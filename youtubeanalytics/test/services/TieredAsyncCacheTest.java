@@ -0,0 +1,130 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.ConfigFactory;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import models.YoutubeApiResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for TieredAsyncCache.
+ * This class contains unit tests for promotion and demotion between the cache tiers.
+ *
+ * @author Mohnish Mirchandani
+ */
+public class TieredAsyncCacheTest {
+
+    private TieredAsyncCache cache;
+
+    /**
+     * Sets up a cache whose heap tier holds a single entry of about one kilobyte.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Before
+    public void setUp() {
+        cache = new TieredAsyncCache(ConfigFactory.parseString(
+            "youtube.cache { heap.max-weight = 1500, cold.max-bytes = 1m, cold.max-entry-bytes = 64k }"
+        ));
+    }
+
+    /**
+     * Tests that an entry evicted from the heap tier is served from the cold tier.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testEvictedEntryIsServedFromColdTier() throws Exception {
+        String padding = "x".repeat(600);
+        cache.set("first", new YoutubeApiResponse(200, "{\"id\":\"first\",\"pad\":\"" + padding + "\"}", 0L), 3600);
+        cache.set("second", new YoutubeApiResponse(200, "{\"id\":\"second\",\"pad\":\"" + padding + "\"}", 0L), 3600);
+
+        Optional<YoutubeApiResponse> first = cache.<YoutubeApiResponse>get("first")
+            .toCompletableFuture().get();
+        Optional<YoutubeApiResponse> second = cache.<YoutubeApiResponse>get("second")
+            .toCompletableFuture().get();
+
+        assertTrue(first.isPresent());
+        assertTrue(second.isPresent());
+        assertEquals("first", first.get().asJson().get("id").asText());
+        assertEquals("second", second.get().asJson().get("id").asText());
+
+        ObjectNode stats = cache.stats();
+        assertTrue(stats.get("heap").get("evictions").asLong() >= 1);
+        assertTrue(stats.get("cold").get("hits").asLong() >= 1);
+        assertTrue(stats.get("cold").get("promotions").asLong() >= 1);
+    }
+
+    /**
+     * Tests that the cold tier evicts its oldest entries when its buffer wraps around, and
+     * that the entries written after the wrap are read back intact.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testColdTierWrapsAroundEvictingOldestEntries() throws Exception {
+        cache = new TieredAsyncCache(ConfigFactory.parseString(
+            "youtube.cache { heap.max-weight = 1500, cold.max-bytes = 2k, cold.max-entry-bytes = 2k }"
+        ));
+        Random random = new Random(42);
+        for (int i = 0; i < 10; i++) {
+            StringBuilder padding = new StringBuilder();
+            for (int j = 0; j < 600; j++) {
+                padding.append(random.nextInt(10));
+            }
+            cache.set("e" + i, new YoutubeApiResponse(200, "{\"id\":\"e" + i + "\",\"pad\":\"" + padding + "\"}", 0L), 3600);
+        }
+
+        ObjectNode cold = cache.stats().get("cold").deepCopy();
+        assertTrue(cold.get("evictions").asLong() >= 1);
+        assertTrue(cold.get("bytes").asLong() <= 2048);
+        assertFalse(cache.get("e0").toCompletableFuture().get().isPresent());
+        Optional<YoutubeApiResponse> newest = cache.<YoutubeApiResponse>get("e8")
+            .toCompletableFuture().get();
+        assertTrue(newest.isPresent());
+        assertEquals("e8", newest.get().asJson().get("id").asText());
+    }
+
+    /**
+     * Tests that values which cannot be serialized are not admitted to the cold tier.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testNonSerializableValueIsRejected() throws Exception {
+        cache.set("first", new Object(), 3600);
+        cache.set("second", new Object(), 3600);
+
+        boolean firstPresent = cache.get("first").toCompletableFuture().get().isPresent();
+        boolean secondPresent = cache.get("second").toCompletableFuture().get().isPresent();
+
+        assertTrue(firstPresent ^ secondPresent);
+        assertEquals(1, cache.stats().get("cold").get("rejections").asLong());
+    }
+
+    /**
+     * Tests that getOrElseUpdate only computes a value on a miss.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testGetOrElseUpdate() throws Exception {
+        String value = cache.getOrElseUpdate("key", () -> CompletableFuture.completedFuture("computed"), 60)
+            .toCompletableFuture().get();
+        String cached = cache.<String>getOrElseUpdate("key", () -> {
+            throw new IllegalStateException("should be cached");
+        }, 60).toCompletableFuture().get();
+
+        assertEquals("computed", value);
+        assertEquals("computed", cached);
+    }
+}
@@ -0,0 +1,141 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+import play.libs.Json;
+
+/**
+ * Test class for VideoIndex.
+ * This class contains unit tests for the inverted index over fetched videos.
+ *
+ * @author Elston Farel
+ */
+public class VideoIndexTest {
+
+    private static VideoIndex index(int segmentMaxDocs, int minResults) {
+        return new VideoIndex(
+            ConfigFactory.parseString(
+                "youtube.index { segment-max-docs = " + segmentMaxDocs +
+                ", min-results = " + minResults + " }"
+            )
+        );
+    }
+
+    private static ObjectNode video(String videoId, String title, String... tags) {
+        ObjectNode video = Json.newObject();
+        video.put("id", videoId);
+        ObjectNode snippet = video.putObject("snippet");
+        snippet.put("title", title);
+        snippet.put("description", "");
+        snippet.putObject("thumbnails").putObject("default").put("url", "http://example.com/t.jpg");
+        ArrayNode tagsNode = snippet.putArray("tags");
+        for (String tag : tags) {
+            tagsNode.add(tag);
+        }
+        return video;
+    }
+
+    /**
+     * Tests that videos are found by tag and by hashtag, newest first, with tags
+     * normalized the way hashtags are written.
+     *
+     * @author Elston Farel
+     */
+    @Test
+    public void testFindsTagsAndHashtags() {
+        VideoIndex index = index(100, 1);
+        index.add(video("a", "Intro", "Machine Learning"));
+        index.add(video("b", "Deep dive #MachineLearning"));
+        index.add(video("c", "Unrelated", "cooking"));
+
+        ArrayNode videos = index.findByTag("#machinelearning", 10);
+
+        assertEquals(2, videos.size());
+        assertEquals("b", videos.get(0).get("videoId").asText());
+        assertEquals("a", videos.get(1).get("videoId").asText());
+    }
+
+    /**
+     * Tests that videos are found by the words of their title and description, newest
+     * first, that every word of the query must match, and that keywords are kept apart
+     * from tags.
+     *
+     * @author Elston Farel
+     */
+    @Test
+    public void testFindsKeywordsInTitleAndDescription() {
+        VideoIndex index = index(100, 1);
+        ObjectNode described = video("a", "Intro", "cooking");
+        ((ObjectNode) described.get("snippet")).put("description", "Learning Java, step by step");
+        index.add(described);
+        index.add(video("b", "Java Streams explained"));
+        index.add(video("c", "Python basics", "java"));
+
+        ArrayNode java = index.findByKeywords("JAVA", 10);
+        assertEquals(2, java.size());
+        assertEquals("b", java.get(0).get("videoId").asText());
+        assertEquals("a", java.get(1).get("videoId").asText());
+
+        ArrayNode both = index.findByKeywords("java streams", 10);
+        assertEquals(1, both.size());
+        assertEquals("b", both.get(0).get("videoId").asText());
+
+        assertNull(index.findByKeywords("cooking", 10));
+        assertNull(index.findByTag("intro", 10));
+    }
+
+    /**
+     * Tests that a lookup with fewer matches than the configured minimum is left to the API.
+     *
+     * @author Elston Farel
+     */
+    @Test
+    public void testInsufficientCoverageFallsBack() {
+        VideoIndex index = index(100, 3);
+        index.add(video("a", "Intro", "java"));
+        index.add(video("a", "Intro", "java"));
+
+        assertNull(index.findByTag("java", 10));
+        assertEquals(1, index.stats().get("videos").asInt());
+        assertEquals(0, index.stats().get("localAnswers").asLong());
+    }
+
+    /**
+     * Tests that only the current and the previous segment are kept.
+     *
+     * @author Elston Farel
+     */
+    @Test
+    public void testOldestSegmentIsDropped() {
+        VideoIndex index = index(2, 1);
+        for (int i = 0; i < 5; i++) {
+            index.add(video("v" + i, "Video " + i, "java"));
+        }
+
+        ArrayNode videos = index.findByTag("java", 10);
+
+        assertEquals(3, videos.size());
+        assertEquals("v4", videos.get(0).get("videoId").asText());
+        assertEquals("v2", videos.get(2).get("videoId").asText());
+    }
+
+    /**
+     * Tests that postings survive the varint round trip for small and large gaps.
+     *
+     * @author Elston Farel
+     */
+    @Test
+    public void testPostingListRoundTrip() {
+        VideoIndex.PostingList list = new VideoIndex.PostingList();
+        int[] docIds = { 0, 1, 127, 128, 16384, 2_000_000 };
+        for (int docId : docIds) {
+            list.append(docId);
+        }
+
+        assertArrayEquals(docIds, list.decode());
+    }
+}
@@ -0,0 +1,190 @@
+package services;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.typesafe.config.ConfigFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import models.YoutubeApiResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import play.libs.ws.WSClient;
+import play.libs.ws.WSRequest;
+import play.libs.ws.WSResponse;
+
+/**
+ * Test class for YoutubeApiClient.
+ * This class contains unit tests for conditional requests with ETags, for the circuit
+ * breakers and for the rotation of API keys.
+ *
+ * @author Mohnish Mirchandani
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class YoutubeApiClientTest {
+
+    @Mock
+    private WSClient wsClient;
+
+    @Mock
+    private WSRequest wsRequest;
+
+    @Mock
+    private WSResponse okResponse;
+
+    @Mock
+    private WSResponse notModifiedResponse;
+
+    private YoutubeApiClient apiClient;
+    private Map<String, String> params;
+
+    /**
+     * Sets up the client on top of a mocked WSClient.
+     *
+     * @author Mohnish Mirchandani
+     */
+    @Before
+    public void setUp() {
+        apiClient = new YoutubeApiClient(wsClient, ConfigFactory.load());
+        params = new LinkedHashMap<>();
+        params.put("part", "snippet");
+        params.put("q", "java");
+        params.put("key", "test-key");
+
+        when(wsClient.url(anyString())).thenReturn(wsRequest);
+        when(wsRequest.addQueryParameter(anyString(), anyString())).thenReturn(wsRequest);
+        when(okResponse.getStatus()).thenReturn(200);
+        when(okResponse.getBody()).thenReturn("{\"items\":[]}");
+        when(okResponse.getSingleHeader("ETag")).thenReturn(Optional.of("\"etag-1\""));
+    }
+
+    /**
+     * Tests that a repeated request is sent with If-None-Match and that a 304 reuses
+     * the remembered body.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testNotModifiedReusesRememberedBody() throws Exception {
+        when(wsRequest.addHeader("If-None-Match", "\"etag-1\"")).thenReturn(wsRequest);
+        when(notModifiedResponse.getStatus()).thenReturn(304);
+        when(wsRequest.get()).thenReturn(
+            CompletableFuture.completedFuture(okResponse),
+            CompletableFuture.completedFuture(notModifiedResponse)
+        );
+
+        YoutubeApiResponse first = apiClient.get("/search", params).toCompletableFuture().get();
+        params.put("key", "rotated-key");
+        YoutubeApiResponse second = apiClient.get("/search", params).toCompletableFuture().get();
+
+        assertFalse(first.isNotModified());
+        assertTrue(second.isNotModified());
+        assertEquals(200, second.getStatus());
+        assertEquals("{\"items\":[]}", second.getBody());
+        assertEquals("\"etag-1\"", second.getEtag());
+        verify(wsRequest, times(1)).addHeader("If-None-Match", "\"etag-1\"");
+        assertEquals(1, apiClient.stats().get("/search").get("notModified").asLong());
+    }
+
+    /**
+     * Tests that requests with different parameters do not share an ETag.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testDifferentParametersAreNotConditional() throws Exception {
+        when(wsRequest.get()).thenReturn(CompletableFuture.completedFuture(okResponse));
+
+        apiClient.get("/search", params).toCompletableFuture().get();
+        params.put("q", "scala");
+        apiClient.get("/search", params).toCompletableFuture().get();
+
+        verify(wsRequest, never()).addHeader(anyString(), anyString());
+        assertEquals(0, apiClient.stats().get("/search").get("conditional").asLong());
+    }
+
+    /**
+     * Tests that once the circuit of an endpoint opens, a request is answered with its last
+     * good response without being sent, and a request without one fails fast.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testOpenCircuitServesLastGoodResponse() throws Exception {
+        apiClient = new YoutubeApiClient(
+            wsClient,
+            ConfigFactory
+                .parseString("youtube.api.circuit-breaker.failure-threshold = 2")
+                .withFallback(ConfigFactory.load())
+        );
+        WSResponse errorResponse = mock(WSResponse.class);
+        when(errorResponse.getStatus()).thenReturn(503);
+        when(wsRequest.addHeader("If-None-Match", "\"etag-1\"")).thenReturn(wsRequest);
+        when(wsRequest.get()).thenReturn(
+            CompletableFuture.completedFuture(okResponse),
+            CompletableFuture.completedFuture(errorResponse)
+        );
+
+        apiClient.get("/search", params).toCompletableFuture().get();
+        assertEquals(503, apiClient.get("/search", params).toCompletableFuture().get().getStatus());
+        assertEquals(503, apiClient.get("/search", params).toCompletableFuture().get().getStatus());
+        YoutubeApiResponse fallback = apiClient.get("/search", params).toCompletableFuture().get();
+        params.put("q", "scala");
+        CompletableFuture<YoutubeApiResponse> uncached = apiClient.get("/search", params).toCompletableFuture();
+
+        assertEquals(200, fallback.getStatus());
+        assertEquals("{\"items\":[]}", fallback.getBody());
+        assertTrue(uncached.isCompletedExceptionally());
+        verify(wsRequest, times(3)).get();
+        JsonNode circuit = apiClient.stats().get("circuitBreakers").get("/search");
+        assertEquals("OPEN", circuit.get("state").asText());
+        assertEquals(1, circuit.get("fallbackHits").asLong());
+        assertEquals(1, circuit.get("rejected").asLong());
+    }
+
+    /**
+     * Tests that a key the API reports as out of quota is quarantined, and the request is
+     * sent again with another key instead of the caller's.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Mohnish Mirchandani
+     */
+    @Test
+    public void testQuotaExceededKeyIsQuarantinedAndRequestResent() throws Exception {
+        apiClient = new YoutubeApiClient(
+            wsClient,
+            ConfigFactory
+                .parseString("youtube.api.keys = [\"key-aaaa\", \"key-bbbb\"]")
+                .withFallback(ConfigFactory.load())
+        );
+        WSResponse quotaExceeded = mock(WSResponse.class);
+        when(quotaExceeded.getStatus()).thenReturn(403);
+        when(quotaExceeded.getBody()).thenReturn("{\"error\":{\"errors\":[{\"reason\":\"quotaExceeded\"}]}}");
+        when(quotaExceeded.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(wsRequest.get()).thenReturn(
+            CompletableFuture.completedFuture(quotaExceeded),
+            CompletableFuture.completedFuture(okResponse)
+        );
+
+        YoutubeApiResponse response = apiClient.get("/search", params).toCompletableFuture().get();
+
+        assertEquals(200, response.getStatus());
+        verify(wsRequest, times(2)).get();
+        verify(wsRequest, never()).addQueryParameter("key", "test-key");
+        JsonNode keys = apiClient.stats().get("keys");
+        assertEquals(
+            1,
+            keys.get("...aaaa").get("quarantines").asLong() + keys.get("...bbbb").get("quarantines").asLong()
+        );
+        assertEquals(1, apiClient.stats().get("/search").get("quotaExceeded").asLong());
+    }
+}
@@ -10,6 +10,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.ConfigFactory;
 import controllers.YoutubeController;
 import org.junit.Before;
 import org.junit.Rule;
@@ -28,6 +29,7 @@ import play.mvc.Result;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
@@ -66,8 +68,9 @@ public class YoutubeServiceTest {
     public void setUp() {
         mapper = new ObjectMapper();
         youtubeService = new YoutubeService(
-                wsClient,
-                cache
+                new YoutubeApiClient(wsClient, ConfigFactory.load()),
+                new CachePolicy(cache, ConfigFactory.load(), new SingleFlight()),
+                new VideoIndex(ConfigFactory.load())
         );
     }
 
@@ -98,13 +101,8 @@ public class YoutubeServiceTest {
         items.add(item2);
         youtubeResponse.set("items", items);
 
-        when(cache.getOrElseUpdate(anyString(), any(), anyInt())).thenAnswer(
-                invocation -> {
-                    // Execute the Callable passed to getOrElseUpdate
-                    java.util.concurrent.Callable<?> callable =
-                            invocation.getArgument(1);
-                    return callable.call();
-                }
+        when(cache.get(anyString())).thenReturn(
+                CompletableFuture.completedFuture(Optional.empty())
         );
 
         when(wsClient.url(anyString())).thenReturn(wsRequest);
@@ -125,8 +123,7 @@ public class YoutubeServiceTest {
 
         // Configure WSResponse to return JSON
         when(wsResponse.getStatus()).thenReturn(200);
-        when(wsResponse.asJson()).thenReturn(mapper.readTree(jsonResponse1));
-        Mockito.lenient().when(youtubeService.getVideo("video1")).thenReturn(CompletableFuture.completedFuture(wsResponse));
+        when(wsResponse.getBody()).thenReturn(jsonResponse1);
 
         ObjectNode videoResponse2 = mapper.createObjectNode();
         ObjectNode snippet2 = mapper.createObjectNode();
@@ -141,8 +138,7 @@ public class YoutubeServiceTest {
 
         // Configure WSResponse to return JSON
         when(wsResponse.getStatus()).thenReturn(200);
-        when(wsResponse.asJson()).thenReturn(mapper.readTree(jsonResponse2));
-        Mockito.lenient().when(youtubeService.getVideo("video2")).thenReturn(CompletableFuture.completedFuture(wsResponse));
+        when(wsResponse.getBody()).thenReturn(jsonResponse2);
 
         // Execute the method
         CompletionStage<ObjectNode> resultStage = youtubeService.modifyResponse(youtubeResponse);
@@ -162,4 +158,32 @@ public class YoutubeServiceTest {
 
     }
 
-}
\ No newline at end of file
+    /**
+     * Tests that a video whose details cannot be fetched is kept unenriched and left out
+     * of the averages, instead of failing the whole response.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testModifyResponseIsolatesFailedVideo() throws Exception {
+        ObjectNode youtubeResponse = mapper.createObjectNode();
+        youtubeResponse.putArray("items").addObject().putObject("id").put("videoId", "deleted");
+
+        when(cache.get(anyString())).thenReturn(
+                CompletableFuture.completedFuture(Optional.empty())
+        );
+        when(wsClient.url(anyString())).thenReturn(wsRequest);
+        when(wsRequest.addQueryParameter(anyString(), anyString())).thenReturn(wsRequest);
+        when(wsRequest.get()).thenReturn(CompletableFuture.completedFuture(wsResponse));
+        when(wsResponse.getStatus()).thenReturn(200);
+        when(wsResponse.getBody()).thenReturn("{\"items\": []}");
+
+        ObjectNode modifiedResponse = youtubeService.modifyResponse(youtubeResponse)
+                .toCompletableFuture().join();
+
+        assertEquals(1, modifiedResponse.get("degradedCount").asInt());
+        assertFalse(modifiedResponse.get("items").get(0).get("enriched").asBoolean());
+        assertTrue(modifiedResponse.has("sentiment"));
+    }
+}
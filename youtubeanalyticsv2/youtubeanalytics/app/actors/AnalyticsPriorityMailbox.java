@@ -0,0 +1,42 @@
+package actors;
+
+import akka.actor.ActorSystem;
+import akka.dispatch.PriorityGenerator;
+import akka.dispatch.UnboundedStablePriorityMailbox;
+import com.typesafe.config.Config;
+import messages.Messages.Prioritized;
+import messages.Messages.WorkClass;
+
+/**
+ * Mailbox of the analytics actors that takes the messages of interactive searches
+ * ahead of the ones of background refreshes. Messages of the same class keep their order.
+ * @author Mohnish Mirchandani
+ */
+public class AnalyticsPriorityMailbox extends UnboundedStablePriorityMailbox {
+
+	/**
+	 * The id of the mailbox configured in application.conf
+	 */
+	public static final String ID = "analytics-mailbox";
+
+	/**
+	 * Constructor called by Akka when an actor with this mailbox is created
+	 * @param settings The settings of the actor system
+	 * @param config The mailbox configuration
+	 * @author Mohnish Mirchandani
+	 */
+	public AnalyticsPriorityMailbox(ActorSystem.Settings settings, Config config) {
+		super(
+			new PriorityGenerator() {
+				@Override
+				public int gen(Object message) {
+					if (message instanceof Prioritized) {
+						return ((Prioritized) message).workClass().ordinal();
+					}
+					// Other messages, e.g. TerminateActor, queue behind the work of all classes
+					return WorkClass.values().length;
+				}
+			}
+		);
+	}
+}
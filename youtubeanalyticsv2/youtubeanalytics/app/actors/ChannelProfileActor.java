@@ -1,54 +1,330 @@
 package actors;
 
-import akka.actor.AbstractActor;
+import akka.actor.AbstractActorWithTimers;
 import akka.actor.ActorRef;
 import akka.actor.Props;
-import akka.actor.typed.javadsl.Receive;
+import akka.actor.Status;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
 import services.ChannelProfileService;
-import play.libs.ws.WSClient;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
-public class ChannelProfileActor extends AbstractActor {
+/**
+ * Actor serving channel profiles.
+ * Profiles are kept in a bounded, least-recently-used cache for a configurable TTL.
+ * Concurrent requests for a channel that is being fetched wait for that fetch instead of
+ * starting their own, and a failed or timed out fetch is replied to every waiter with a
+ * {@link Status.Failure}.
+ * <p>
+ * Channels appearing in search results are prefetched in the background: their ids are
+ * queued and, on every prefetch tick, fetched in one batched /channels call as long as the
+ * per-tick call budget allows and no user request is waiting for a fetch.
+ *
+ * @author Pretty Kotian
+ */
+public class ChannelProfileActor extends AbstractActorWithTimers {
+
+    private static final String CACHE_PATH = "youtube.channel-profile.cache";
+    private static final String PREFETCH_PATH = "youtube.channel-profile.prefetch";
+    private static final int MAX_BATCH_SIZE = 50;
+    private static final Object PREFETCH_TICK = "PrefetchTick";
 
     private final ChannelProfileService channelProfileService;
-    public static Map<String, JsonNode> channelProfileCache = new HashMap<>();
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long fetchTimeoutMillis;
+    private final LinkedHashMap<String, CachedProfile> channelProfileCache;
+    private final Map<String, List<ActorRef>> pendingRequests = new LinkedHashMap<>();
+
+    private final boolean prefetchEnabled;
+    private final Duration prefetchInterval;
+    private final int prefetchCallsPerInterval;
+    private final int prefetchMaxQueue;
+    private final Set<String> prefetchQueue = new LinkedHashSet<>();
+    private final Set<String> prefetchedUnused = new HashSet<>();
+
+    private long hits;
+    private long misses;
+    private long coalesced;
+    private long failures;
+    private long evictions;
+    private long prefetchCalls;
+    private long prefetched;
+    private long prefetchHits;
+    private long prefetchDropped;
 
     public ChannelProfileActor(ChannelProfileService channelProfileService) {
-            this.channelProfileService = channelProfileService;
-        }
-
-        @Override
-        public Receive createReceive() {
-            return receiveBuilder()
-                    .match(InitChannelProfileService.class, message -> {
-                        String channelId = message.channelId;
-
-                        CompletionStage<JsonNode> channelDetailsFuture = channelProfileService.fetchChannelDetails(channelId);
-                        CompletionStage<JsonNode> latestVideosFuture = channelProfileService.fetchLatestVideos(channelId);
-                        ActorRef sender = getSender();
-                        channelDetailsFuture.thenCombine(latestVideosFuture, (channelDetails, latestVideos) -> {
-                            ObjectNode response = JsonNodeFactory.instance.objectNode();
-                            response.set("channelDetails", channelDetails);
-                            response.set("latestVideos", latestVideos);
-                            sender.tell(response, getSelf());
-                            return response;
-                            //return new ChannelProfileResults(channelId, response);
-                        });
-//                                .thenAccept(results -> getSender().tell(results, getSelf()));
-                    })
-                    .build();
-        }
-
-        public static Props props(ChannelProfileService channelProfileService) {
-            return Props.create(ChannelProfileActor.class, () -> new ChannelProfileActor(channelProfileService));
+        this.channelProfileService = channelProfileService;
+        Config config = getContext().getSystem().settings().config();
+        this.maxEntries = config.hasPath(CACHE_PATH + ".max-entries")
+            ? config.getInt(CACHE_PATH + ".max-entries")
+            : 500;
+        this.ttlMillis = config.hasPath(CACHE_PATH + ".ttl")
+            ? config.getDuration(CACHE_PATH + ".ttl").toMillis()
+            : TimeUnit.MINUTES.toMillis(10);
+        this.fetchTimeoutMillis = config.hasPath(CACHE_PATH + ".fetch-timeout")
+            ? config.getDuration(CACHE_PATH + ".fetch-timeout").toMillis()
+            : TimeUnit.SECONDS.toMillis(5);
+        this.prefetchEnabled = !config.hasPath(PREFETCH_PATH + ".enabled")
+            || config.getBoolean(PREFETCH_PATH + ".enabled");
+        this.prefetchInterval = config.hasPath(PREFETCH_PATH + ".interval")
+            ? config.getDuration(PREFETCH_PATH + ".interval")
+            : Duration.ofSeconds(5);
+        this.prefetchCallsPerInterval = config.hasPath(PREFETCH_PATH + ".calls-per-interval")
+            ? config.getInt(PREFETCH_PATH + ".calls-per-interval")
+            : 12;
+        this.prefetchMaxQueue = config.hasPath(PREFETCH_PATH + ".max-queue")
+            ? config.getInt(PREFETCH_PATH + ".max-queue")
+            : 200;
+        this.channelProfileCache = new LinkedHashMap<String, CachedProfile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedProfile> eldest) {
+                if (size() > maxEntries) {
+                    evictions++;
+                    prefetchedUnused.remove(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void preStart() {
+        if (prefetchEnabled) {
+            getTimers().startTimerWithFixedDelay(PREFETCH_TICK, PREFETCH_TICK, prefetchInterval);
+        }
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(InitChannelProfileService.class, this::handleRequest)
+                .match(PrefetchChannels.class, this::handlePrefetch)
+                .matchEquals(PREFETCH_TICK, tick -> prefetchBatch())
+                .match(ProfileLoaded.class, this::handleLoaded)
+                .match(ProfileFailed.class, this::handleFailed)
+                .match(GetMetrics.class, message -> getSender().tell(metrics(), getSelf()))
+                .build();
+    }
+
+    public static Props props(ChannelProfileService channelProfileService) {
+        return Props.create(ChannelProfileActor.class, () -> new ChannelProfileActor(channelProfileService));
+    }
+
+    /**
+     * Replies from the cache, joins a fetch in flight, or starts a new fetch.
+     *
+     * @param message The request for a channel profile.
+     */
+    private void handleRequest(InitChannelProfileService message) {
+        String channelId = message.channelId;
+        CachedProfile cached = channelProfileCache.get(channelId);
+        if (isFresh(cached)) {
+            hits++;
+            if (prefetchedUnused.remove(channelId)) {
+                prefetchHits++;
+            }
+            getSender().tell(cached.profile, getSelf());
+            return;
+        }
+        if (cached != null) {
+            channelProfileCache.remove(channelId);
+            prefetchedUnused.remove(channelId);
+        }
+        prefetchQueue.remove(channelId);
+
+        List<ActorRef> waiters = pendingRequests.get(channelId);
+        if (waiters != null) {
+            coalesced++;
+            waiters.add(getSender());
+            return;
+        }
+        misses++;
+        waiters = new ArrayList<>();
+        waiters.add(getSender());
+        pendingRequests.put(channelId, waiters);
+        fetch(channelId);
+    }
+
+    /**
+     * Fetches the channel details and latest videos and pipes the outcome back to this
+     * actor, so the cache is only ever touched from the actor's thread.
+     *
+     * @param channelId The ID of the channel.
+     */
+    private void fetch(String channelId) {
+        complete(channelId, channelProfileService.fetchChannelDetails(channelId), getSelf(), false);
+    }
+
+    /**
+     * Combines the channel details with the latest videos and pipes the profile, or the
+     * failure, back to this actor. The latest videos are fetched alongside the details
+     * only when the uploads playlist id is already known; otherwise they wait for the
+     * details, whose /channels response carries the id, so a cold channel costs a single
+     * /channels call.
+     *
+     * @param channelId             The ID of the channel.
+     * @param channelDetailsFuture  The channel details being fetched.
+     * @param self                  This actor.
+     * @param prefetched            Whether the fetch is a background prefetch.
+     */
+    private void complete(String channelId, CompletionStage<JsonNode> channelDetailsFuture, ActorRef self,
+                          boolean prefetched) {
+        CompletionStage<JsonNode> latestVideosFuture = channelProfileService.knowsUploadsPlaylist(channelId)
+                ? channelProfileService.fetchLatestVideos(channelId)
+                : channelDetailsFuture.thenCompose(channelDetails -> channelProfileService.fetchLatestVideos(channelId));
+        channelDetailsFuture
+                .thenCombine(latestVideosFuture, (channelDetails, latestVideos) -> {
+                    ObjectNode response = JsonNodeFactory.instance.objectNode();
+                    response.set("channelDetails", channelDetails);
+                    response.set("latestVideos", latestVideos);
+                    response.put("fetchedAt", System.currentTimeMillis());
+                    return response;
+                })
+                .toCompletableFuture()
+                .orTimeout(fetchTimeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        self.tell(new ProfileFailed(channelId, error), ActorRef.noSender());
+                    } else {
+                        self.tell(new ProfileLoaded(channelId, response, prefetched), ActorRef.noSender());
+                    }
+                });
+    }
+
+    /**
+     * Queues the channels of a search result for prefetching, skipping channels that are
+     * cached or being fetched. The oldest queued ids are dropped when the queue is full.
+     *
+     * @param message The channels to prefetch.
+     */
+    private void handlePrefetch(PrefetchChannels message) {
+        if (!prefetchEnabled) {
+            return;
+        }
+        for (String channelId : message.channelIds) {
+            if (isFresh(channelProfileCache.get(channelId)) || pendingRequests.containsKey(channelId)) {
+                continue;
+            }
+            prefetchQueue.add(channelId);
+        }
+        Iterator<String> oldest = prefetchQueue.iterator();
+        while (prefetchQueue.size() > prefetchMaxQueue && oldest.hasNext()) {
+            oldest.next();
+            oldest.remove();
+            prefetchDropped++;
         }
+    }
+
+    /**
+     * Prefetches queued channels with one batched /channels call followed by one
+     * /playlistItems call per channel, within the per-tick call budget. Skipped while a
+     * user request is waiting for a fetch, so prefetching never competes with it.
+     * The prefetched channels are registered as pending, so user requests arriving in
+     * the meantime join the prefetch.
+     */
+    private void prefetchBatch() {
+        boolean userWaiting = pendingRequests.values().stream().anyMatch(waiters -> !waiters.isEmpty());
+        int batchSize = Math.min(Math.min(prefetchQueue.size(), MAX_BATCH_SIZE), prefetchCallsPerInterval - 1);
+        if (userWaiting || batchSize <= 0) {
+            return;
+        }
+
+        List<String> channelIds = new ArrayList<>(batchSize);
+        Iterator<String> queued = prefetchQueue.iterator();
+        while (channelIds.size() < batchSize && queued.hasNext()) {
+            String channelId = queued.next();
+            queued.remove();
+            if (!pendingRequests.containsKey(channelId)) {
+                channelIds.add(channelId);
+                pendingRequests.put(channelId, new ArrayList<>());
+            }
+        }
+        if (channelIds.isEmpty()) {
+            return;
+        }
+        prefetchCalls += 1 + channelIds.size();
+
+        ActorRef self = getSelf();
+        channelProfileService.fetchChannelDetailsBatch(channelIds).whenComplete((channels, error) -> {
+            for (String channelId : channelIds) {
+                JsonNode channelDetails = channels != null ? channels.get(channelId) : null;
+                if (channelDetails == null) {
+                    Throwable cause = error != null ? error : new IllegalStateException("Channel not found: " + channelId);
+                    self.tell(new ProfileFailed(channelId, cause), ActorRef.noSender());
+                    continue;
+                }
+                complete(channelId, CompletableFuture.completedFuture(channelDetails), self, true);
+            }
+        });
+    }
+
+    private boolean isFresh(CachedProfile cached) {
+        return cached != null && System.currentTimeMillis() - cached.storedAt < ttlMillis;
+    }
+
+    private void handleLoaded(ProfileLoaded message) {
+        if (message.prefetched) {
+            prefetched++;
+            prefetchedUnused.add(message.channelId);
+        }
+        channelProfileCache.put(message.channelId, new CachedProfile(message.profile, System.currentTimeMillis()));
+        List<ActorRef> waiters = pendingRequests.remove(message.channelId);
+        if (waiters != null) {
+            waiters.forEach(waiter -> waiter.tell(message.profile, getSelf()));
+        }
+    }
+
+    private void handleFailed(ProfileFailed message) {
+        failures++;
+        List<ActorRef> waiters = pendingRequests.remove(message.channelId);
+        if (waiters != null) {
+            waiters.forEach(waiter -> waiter.tell(new Status.Failure(message.cause), getSelf()));
+        }
+    }
+
+    /**
+     * Gets the cache counters of this actor.
+     *
+     * @return The hits, misses, coalesced requests, failures, evictions and size as JSON.
+     */
+    private ObjectNode metrics() {
+        long requests = hits + misses + coalesced;
+        ObjectNode metrics = JsonNodeFactory.instance.objectNode();
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("coalesced", coalesced);
+        metrics.put("failures", failures);
+        metrics.put("evictions", evictions);
+        metrics.put("entries", channelProfileCache.size());
+        metrics.put("maxEntries", maxEntries);
+        metrics.put("pending", pendingRequests.size());
+        metrics.put("hitRate", requests == 0 ? 0.0 : (double) hits / requests);
+        ObjectNode prefetch = metrics.putObject("prefetch");
+        prefetch.put("queued", prefetchQueue.size());
+        prefetch.put("dropped", prefetchDropped);
+        prefetch.put("calls", prefetchCalls);
+        prefetch.put("prefetched", prefetched);
+        prefetch.put("hits", prefetchHits);
+        return metrics;
+    }
+
+    // Message class to initialize the service
     public static class InitChannelProfileService {
         public final String channelId;
 
@@ -57,6 +333,19 @@ public class ChannelProfileActor extends AbstractActor {
         }
     }
 
+    // Message class asking to prefetch the profiles of channels shown in search results
+    public static class PrefetchChannels {
+        public final List<String> channelIds;
+
+        public PrefetchChannels(List<String> channelIds) {
+            this.channelIds = channelIds;
+        }
+    }
+
+    // Message class asking for the cache metrics
+    public static class GetMetrics {
+    }
+
     // Message class for results
     public static class ChannelProfileResults {
         public final String channelId;
@@ -65,13 +354,38 @@ public class ChannelProfileActor extends AbstractActor {
         public ChannelProfileResults(String channelId, JsonNode channelProfile) {
             this.channelId = channelId;
             this.channelProfile = channelProfile;
-            System.out.println("Channel Profile for " + channelId + ": " + channelProfile);
+        }
+    }
+
+    private static class ProfileLoaded {
+        final String channelId;
+        final ObjectNode profile;
+        final boolean prefetched;
 
+        ProfileLoaded(String channelId, ObjectNode profile, boolean prefetched) {
+            this.channelId = channelId;
+            this.profile = profile;
+            this.prefetched = prefetched;
         }
     }
 
-}
+    private static class ProfileFailed {
+        final String channelId;
+        final Throwable cause;
 
-    // Message class to initialize the service
+        ProfileFailed(String channelId, Throwable cause) {
+            this.channelId = channelId;
+            this.cause = cause;
+        }
+    }
 
+    private static class CachedProfile {
+        final ObjectNode profile;
+        final long storedAt;
 
+        CachedProfile(ObjectNode profile, long storedAt) {
+            this.profile = profile;
+            this.storedAt = storedAt;
+        }
+    }
+}
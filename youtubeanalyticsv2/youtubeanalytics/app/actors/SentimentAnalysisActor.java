@@ -2,7 +2,9 @@ package actors;
 
 import akka.actor.AbstractActor;
 import akka.actor.Props;
+import messages.Messages.Prioritized;
 import messages.Messages.TerminateActor;
+import messages.Messages.WorkClass;
 
 import java.util.List;
 import services.SentimentAnalyzer;
@@ -61,17 +63,32 @@ public class SentimentAnalysisActor extends AbstractActor {
 	 * @author Mohnish Mirchandani
 	 */
 
-	public static class initSentimentAnalyzerService {
+	public static class initSentimentAnalyzerService implements Prioritized {
 
 		public String query;
 		public List<String> descriptions;
+		public WorkClass workClass;
 
 		public initSentimentAnalyzerService(
 			String query,
 			List<String> descriptions
+		) {
+			this(query, descriptions, WorkClass.BACKGROUND);
+		}
+
+		public initSentimentAnalyzerService(
+			String query,
+			List<String> descriptions,
+			WorkClass workClass
 		) {
 			this.query = query;
 			this.descriptions = descriptions;
+			this.workClass = workClass;
+		}
+
+		@Override
+		public WorkClass workClass() {
+			return workClass;
 		}
 	}
 
@@ -17,6 +17,8 @@ import java.util.Map;
 
 /**
  * UserActor handles WebSocket messages and manages search history and responses.
+ * Searching for a query that is not in the history yet is rate limited per user; a
+ * throttled search is answered with a "throttled" message telling when to retry.
  * @author Vatsal Dadia
  */
 public class UserActor extends AbstractActor {
@@ -55,6 +57,18 @@ public class UserActor extends AbstractActor {
         this.searchHistory = new ArrayList<>();
 	}
 
+	/**
+	 * Identifies the user of a WebSocket session, to rate limit their new queries and
+	 * charge the API calls of their searches to their share.
+	 *
+	 * @param userActor The UserActor of the session.
+	 * @return The user key.
+	 * @author Vatsal Dadia
+	 */
+	public static String userKey(ActorRef userActor) {
+		return userActor.path().toString();
+	}
+
 	// public static class ServerReasponse {
 	// 	public JsonNode data;
 	// 	public ServerReasponse(JsonNode data) {
@@ -88,9 +102,16 @@ public class UserActor extends AbstractActor {
 	 */
 	private void handleWebSocketMessage(JsonNode json) {
 		if (json.get("action").asText().equals("search")) {
-			String query = json.get("query").asText();
+			// Equivalent spellings share one history entry and one SearchActor
+			String query = youtubeController.canonicalQuery(json.get("query").asText());
 			if (searchHistory.contains(query)) {
 				searchHistory.remove(query);
+			} else {
+				long retryAfterMillis = youtubeController.acquireNewQuery(userKey(getSelf()));
+				if (retryAfterMillis > 0) {
+					sendThrottled(query, retryAfterMillis);
+					return;
+				}
 			}
 			searchHistory.add(0, query);
 			ActorRef searchActor = youtubeController.getSearchActor(query);
@@ -98,6 +119,22 @@ public class UserActor extends AbstractActor {
 		}
 	}
 
+	/**
+	 * Tells the user that a search was not started because they started too many new
+	 * queries, and when they may search again.
+	 * @param query The search query that was not started.
+	 * @param retryAfterMillis The time until the user may start a new query.
+	 * @author Vatsal Dadia
+	 */
+	private void sendThrottled(String query, long retryAfterMillis) {
+		ObjectNode throttled = Json.newObject();
+		throttled.put("query", query);
+		throttled.put("retryAfterSeconds", (long) Math.ceil(retryAfterMillis / 1000.0));
+		ObjectNode result = Json.newObject();
+		result.set("throttled", throttled);
+		wsout.tell(result, self());
+	}
+
 	/**
 	 * Handles search updates by sending the latest search responses to the WebSocket output.
 	 * @author Vatsal Dadia
@@ -24,7 +24,7 @@ import static services.WordStatsService.calculateWordStats;
  */
 public class WordStatsActor extends AbstractActor {
 
-    public static Map<String, JsonNode> wordStatsMap = new HashMap<>();
+    public static Map<String, StoredWordStats> wordStatsMap = new HashMap<>();
 
 
     /**
@@ -69,20 +69,38 @@ public class WordStatsActor extends AbstractActor {
     /**
      * Message class to initialize the word statistics service.
      */
-    public static class InitWordStatsService {
+    public static class InitWordStatsService implements Messages.Prioritized {
         public final String videoId;
         public final List<String> descriptions;
+        public final Messages.WorkClass workClass;
 
 
         /**
-         * Constructs an InitWordStatsService message.
+         * Constructs an InitWordStatsService message for a background refresh.
          *
          * @param videoId the ID of the video.
          * @param descriptions the list of video descriptions.
          */
         public InitWordStatsService(String videoId, List<String> descriptions) {
+            this(videoId, descriptions, Messages.WorkClass.BACKGROUND);
+        }
+
+        /**
+         * Constructs an InitWordStatsService message.
+         *
+         * @param videoId the ID of the video.
+         * @param descriptions the list of video descriptions.
+         * @param workClass the class of work the message belongs to.
+         */
+        public InitWordStatsService(String videoId, List<String> descriptions, Messages.WorkClass workClass) {
             this.videoId = videoId;
             this.descriptions = descriptions;
+            this.workClass = workClass;
+        }
+
+        @Override
+        public Messages.WorkClass workClass() {
+            return workClass;
         }
     }
 
@@ -93,6 +111,7 @@ public class WordStatsActor extends AbstractActor {
     public static class WordStatsResults {
         public final String videoId;
         public final JsonNode wordStats;
+        public final long refreshedAt;
 
 
         /**
@@ -106,8 +125,31 @@ public class WordStatsActor extends AbstractActor {
             this.videoId = videoId;
             ObjectMapper mapper = new ObjectMapper();
             this.wordStats = mapper.valueToTree(wordStats);
+            this.refreshedAt = System.currentTimeMillis();
             System.out.println(wordStats);
         }
     }
+
+
+    /**
+     * The word statistics of a query together with the time they were computed.
+     */
+    public static class StoredWordStats {
+        public final JsonNode wordStats;
+        public final long refreshedAt;
+
+
+        /**
+         * Constructs a StoredWordStats entry.
+         *
+         * @param wordStats the word statistics.
+         * @param refreshedAt the time the statistics were computed, in epoch milliseconds.
+         * @author Rolwyn Raju
+         */
+        public StoredWordStats(JsonNode wordStats, long refreshedAt) {
+            this.wordStats = wordStats;
+            this.refreshedAt = refreshedAt;
+        }
+    }
 }
 
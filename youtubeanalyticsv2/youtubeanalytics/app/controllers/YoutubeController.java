@@ -16,11 +16,16 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.inject.Inject;
+import services.AdaptivePollPolicy;
 import services.ChannelProfileService;
+import services.PollScheduler;
+import services.QueryNormalizer;
+import services.QueryRateLimiter;
+import services.YoutubeApiClient;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CompletionStage;
 import play.cache.AsyncCacheApi;
 import play.libs.Json;
@@ -38,6 +43,11 @@ public class YoutubeController extends Controller {
 	private final ActorSystem actorSystem;
 	private final Materializer materializer;
 	private final WSClient ws;
+	private final YoutubeApiClient apiClient;
+	private final AdaptivePollPolicy pollPolicy;
+	private final PollScheduler pollScheduler;
+	private final QueryNormalizer queryNormalizer;
+	private final QueryRateLimiter queryRateLimiter;
 	private AsyncCacheApi cache;
 	private final ActorRef readabilityCalculatorActor;
 	private final ActorRef sentimentAnalysisActor;
@@ -48,6 +58,10 @@ public class YoutubeController extends Controller {
 
 	private Map<String, ActorRef> searchActors;
 
+	// Word stats change with every poll of the query; channel profiles are cached for minutes
+	private static final long WORD_STATS_MAX_AGE_SECONDS = 10;
+	private static final long CHANNEL_PROFILE_MAX_AGE_SECONDS = 60;
+
 	/**
 	 * Constructor for YoutubeController.
 	 *
@@ -64,22 +78,37 @@ public class YoutubeController extends Controller {
 		//		AsyncCacheApi cache
 	) {
 		this.ws = ws;
+		this.apiClient = new YoutubeApiClient(ws, system.settings().config());
+		this.pollPolicy = new AdaptivePollPolicy(system.settings().config(), apiClient.quota());
+		this.pollScheduler = new PollScheduler(system.settings().config());
+		this.queryRateLimiter = new QueryRateLimiter(system.settings().config());
+		system.scheduler().scheduleAtFixedRate(
+			pollScheduler.tickDuration(),
+			pollScheduler.tickDuration(),
+			pollScheduler::tick,
+			system.dispatcher()
+		);
 		this.actorSystem = system;
 		this.materializer = materializer;
-		this.searchActors = new HashMap<>();
+		this.searchActors = new ConcurrentHashMap<>();
+		com.typesafe.config.Config config = system.settings().config();
+		this.queryNormalizer = new QueryNormalizer(
+			config.hasPath("youtube.query.ignore-stopwords") &&
+			config.getBoolean("youtube.query.ignore-stopwords")
+		);
 		//		this.cache = cache;
 		this.readabilityCalculatorActor = system.actorOf(
-			ReadabilityCalculator.props()
+			ReadabilityCalculator.props().withMailbox(AnalyticsPriorityMailbox.ID)
 		);
 		this.sentimentAnalysisActor = system.actorOf(
-			SentimentAnalysisActor.props()
+			SentimentAnalysisActor.props().withMailbox(AnalyticsPriorityMailbox.ID)
 		);
 		this.supervisorActor = system.actorOf(
             SupervisorActor.props(this.actorSystem, ws),
             "supervisorActor"
         );
 		this.wordStatsActor = system.actorOf(
-				WordStatsActor.props()
+				WordStatsActor.props().withMailbox(AnalyticsPriorityMailbox.ID)
 		);
 
 
@@ -88,7 +117,7 @@ public class YoutubeController extends Controller {
         supervisorActor.tell(new SupervisorActor.AddActor(wordStatsActor), ActorRef.noSender());
         // supervisorActor.tell(new SupervisorActor.AddActor(helperActor), ActorRef.noSender());
 
-		ChannelProfileService channelProfileService = new ChannelProfileService(ws);
+		ChannelProfileService channelProfileService = new ChannelProfileService(apiClient);
 		this.channelProfileActor = system.actorOf(ChannelProfileActor.props(channelProfileService));
 		//		this.helperActor = system.actorOf(HelperActor.props(system, ws));
 		//		system.actorOf(Props.create(TestActor.class));
@@ -104,14 +133,29 @@ public class YoutubeController extends Controller {
 
 	/**
 	 * An action that retrieves word statistics for a given query.
+	 * A conditional request for statistics the client already holds is answered with 304
+	 * without rendering them. Last-Modified is the time the statistics were computed.
 	 *
+	 * @param request The incoming request.
 	 * @param query The search query.
 	 * @return A Result rendering the word statistics page.
 	 * @author Rolwyn Raju
 	 */
-	public Result getWordStats(String query) {
-		JsonNode wordStats = WordStatsActor.wordStatsMap.get(query);
-		return ok(views.html.wordstats.render(wordStats, query));
+	public Result getWordStats(Http.Request request, String query) {
+		WordStatsActor.StoredWordStats stored =
+			WordStatsActor.wordStatsMap.get(queryNormalizer.normalize(query));
+		JsonNode wordStats = stored != null ? stored.wordStats : null;
+		long refreshedAt = stored != null ? stored.refreshedAt : 0;
+		String etag = HttpCaching.etag("wordstats", String.valueOf(wordStats));
+		if (HttpCaching.isNotModified(request, etag, refreshedAt)) {
+			return HttpCaching.notModified(etag, refreshedAt, WORD_STATS_MAX_AGE_SECONDS);
+		}
+		return HttpCaching.withValidators(
+			ok(views.html.wordstats.render(wordStats, query)),
+			etag,
+			refreshedAt,
+			WORD_STATS_MAX_AGE_SECONDS
+		);
 	}
 
 	/**
@@ -129,35 +173,70 @@ public class YoutubeController extends Controller {
 		);
 	}
 
+	/**
+	 * Maps a query typed by a user to its canonical form, under which its SearchActor,
+	 * its poll and its word statistics are kept.
+	 *
+	 * @param query The search query as typed by the user.
+	 * @return The canonical query.
+	 * @author Vatsal Dadia
+	 */
+	public String canonicalQuery(String query) {
+		return queryNormalizer.canonicalize(query);
+	}
+
+	/**
+	 * Takes one of the new queries a user may start, under the per-user rate limit.
+	 *
+	 * @param user The user key of the WebSocket session.
+	 * @return 0 if the user may start the query, otherwise the milliseconds until they may.
+	 * @author Vatsal Dadia
+	 */
+	public long acquireNewQuery(String user) {
+		java.time.Duration wait = queryRateLimiter.tryAcquire(user);
+		return wait.isZero() ? 0 : Math.max(1, wait.toMillis());
+	}
+
 	/**
 	 * Retrieves or creates a SearchActor for a given query.
 	 *
-	 * @param query The search query.
+	 * @param query The canonical search query.
 	 * @return The ActorRef for the SearchActor.
 	 * @author Vatsal Dadia
 	 */
 	public ActorRef getSearchActor(String query) {
-		if (!searchActors.containsKey(query)) {
-			searchActors.put(
-				query,
-				this.actorSystem.actorOf(
+		String canonical = queryNormalizer.normalize(query);
+		ActorRef searchActor = searchActors.computeIfAbsent(
+			canonical,
+			key -> this.actorSystem.actorOf(
 						SearchActor.props(
-							ws,
-							query,
+							apiClient,
+							pollPolicy,
+							pollScheduler,
+							key,
 							cache,
 							readabilityCalculatorActor,
 							sentimentAnalysisActor, wordStatsActor,
 								channelProfileActor
 						)
 					)
-			);
-		}
+		);
 
-		supervisorActor.tell(new SupervisorActor.AddActor(searchActors.get(query)), ActorRef.noSender());
+		supervisorActor.tell(new SupervisorActor.AddActor(searchActor), ActorRef.noSender());
         
-		return searchActors.get(query);
+		return searchActor;
 	}
-	public CompletionStage<Result> getChannelProfile(String channelId) {
+	/**
+	 * An action that renders the profile of a channel.
+	 * A conditional request for a profile the client already holds is answered with 304
+	 * without rendering it. Last-Modified is the time the profile was fetched.
+	 *
+	 * @param request The incoming request.
+	 * @param channelId The ID of the channel.
+	 * @return A CompletionStage containing the rendered channel profile.
+	 * @author Pretty Kotian
+	 */
+	public CompletionStage<Result> getChannelProfile(Http.Request request, String channelId) {
 		System.out.println("Received Channel ID in Controller: " + channelId);
 
 		String decodedChannelId = URLDecoder.decode(channelId, StandardCharsets.UTF_8);
@@ -174,11 +253,54 @@ public class YoutubeController extends Controller {
 
 					JsonNode channelDetails = results.get("channelDetails");
 					JsonNode latestVideos = results.get("latestVideos");
+					long fetchedAt = results.path("fetchedAt").asLong(0);
 
 						System.out.println("LatestVideo" + latestVideos);
 						System.out.println("channelDetails"+ channelDetails);
 					System.out.println("Response"+ response);
-						return ok(views.html.channelprofile.render(channelDetails, latestVideos));
-				});
+					String etag = HttpCaching.etag(
+						"channel",
+						String.valueOf(channelDetails) + latestVideos
+					);
+					if (HttpCaching.isNotModified(request, etag, fetchedAt)) {
+						return HttpCaching.notModified(etag, fetchedAt, CHANNEL_PROFILE_MAX_AGE_SECONDS);
+					}
+					return HttpCaching.withValidators(
+						ok(views.html.channelprofile.render(channelDetails, latestVideos)),
+						etag,
+						fetchedAt,
+						CHANNEL_PROFILE_MAX_AGE_SECONDS
+					);
+				})
+				.exceptionally(error ->
+					status(BAD_GATEWAY, "Channel profile is currently unavailable")
+				);
+	}
+
+	/**
+	 * Reports the channel profile cache and YouTube API client metrics.
+	 *
+	 * @return A CompletionStage containing the metrics as JSON.
+	 * @author Pretty Kotian
+	 */
+	public CompletionStage<Result> metrics() {
+		return Patterns.ask(
+				channelProfileActor,
+				new ChannelProfileActor.GetMetrics(),
+				java.time.Duration.ofSeconds(5)
+			)
+			.thenApply(channelProfile -> {
+				ObjectNode metrics = Json.newObject();
+				metrics.set("channelProfileCache", (JsonNode) channelProfile);
+				// notModified of /search counts the polls that skipped analysis and broadcast
+				metrics.set("youtubeApi", apiClient.stats());
+				metrics.set("pollIntervals", pollPolicy.stats());
+				metrics.set("pollScheduler", pollScheduler.stats());
+				metrics.set("newQueries", queryRateLimiter.stats());
+				ObjectNode queryNormalization = queryNormalizer.stats();
+				queryNormalization.put("searchActors", searchActors.size());
+				metrics.set("queryNormalization", queryNormalization);
+				return ok(metrics);
+			});
 	}
 }
@@ -22,5 +22,33 @@ public class Messages {
 	 */
 	public static class TerminateActor {
     }
+
+	/**
+	 * Marker for messages, events and snapshots serialized with Jackson,
+	 * e.g. the ones journaled by a persistent SearchActor
+	 * @author Mohnish Mirchandani
+	 */
+	public interface JsonSerializable {
+	}
+
+	/**
+	 * Classes of work competing for the outbound API requests and the analytics actors.
+	 * Searches a user is waiting on for the first time go ahead of background refreshes;
+	 * the classes are listed from the highest priority down
+	 * @author Mohnish Mirchandani
+	 */
+	public enum WorkClass {
+		INTERACTIVE,
+		BACKGROUND
+	}
+
+	/**
+	 * Implemented by messages that belong to a class of work, so the priority mailbox of
+	 * the analytics actors can order them
+	 * @author Mohnish Mirchandani
+	 */
+	public interface Prioritized {
+		WorkClass workClass();
+	}
     
 }
@@ -0,0 +1,142 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses how often each search query is polled, between configured bounds.
+ * A query is polled about twice per new video expected from the rate of new video ids seen
+ * in its recent rounds, so queries whose results rarely change are polled rarely. The
+ * interval shrinks with the number of subscribers watching the query, and grows while the
+ * daily API quota is being spent ahead of schedule.
+ *
+ * @author Vatsal Dadia
+ */
+public class AdaptivePollPolicy {
+
+    private static final String CONFIG_PATH = "youtube.search.poll";
+    private static final double HOUR_MILLIS = Duration.ofHours(1).toMillis();
+    private static final double RATE_WEIGHT = 0.3;
+    private static final int POLLS_PER_NEW_VIDEO = 2;
+
+    private final long initialMillis;
+    private final long minMillis;
+    private final long maxMillis;
+    private final QuotaTracker quota;
+    private final Map<String, QueryPolling> queries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the policy with the bounds configured under {@code youtube.search.poll}.
+     *
+     * @param config The application configuration.
+     * @param quota  The tracker of the API quota spent today.
+     */
+    public AdaptivePollPolicy(Config config, QuotaTracker quota) {
+        this.initialMillis = millis(config, "initial-interval", Duration.ofMinutes(1));
+        this.minMillis = millis(config, "min-interval", Duration.ofMinutes(1));
+        this.maxMillis = Math.max(minMillis, millis(config, "max-interval", Duration.ofMinutes(30)));
+        this.quota = quota;
+    }
+
+    /**
+     * Records a finished search round of a query. The first round only sets the baseline
+     * the rate of new videos is measured from.
+     *
+     * @param query     The search query.
+     * @param newVideos The number of video ids that were not in the previous round.
+     */
+    public void recordRound(String query, int newVideos) {
+        recordRound(query, newVideos, System.currentTimeMillis());
+    }
+
+    void recordRound(String query, int newVideos, long now) {
+        queries.computeIfAbsent(query, q -> new QueryPolling()).record(newVideos, now);
+    }
+
+    /**
+     * Computes the time until the next poll of a query and remembers it as the current
+     * interval of the query.
+     *
+     * @param query       The search query.
+     * @param subscribers The number of subscribers watching the query.
+     * @return The time until the next poll.
+     */
+    public Duration nextInterval(String query, int subscribers) {
+        QueryPolling polling = queries.computeIfAbsent(query, q -> new QueryPolling());
+        double interval;
+        synchronized (polling) {
+            if (!polling.measured) {
+                interval = initialMillis;
+            } else if (polling.newVideosPerHour <= 0) {
+                interval = maxMillis;
+            } else {
+                interval = HOUR_MILLIS / polling.newVideosPerHour / POLLS_PER_NEW_VIDEO;
+            }
+            polling.subscribers = subscribers;
+        }
+        // Every doubling of the audience shortens the interval by one more step
+        interval /= 1 + Math.log(Math.max(1, subscribers)) / Math.log(2);
+        double pacing = quota.pacing();
+        if (quota.remainingFraction() <= 0) {
+            interval = maxMillis;
+        } else if (pacing > 1) {
+            interval *= pacing;
+        }
+        long clamped = Math.max(minMillis, Math.min(maxMillis, (long) interval));
+        polling.intervalMillis = clamped;
+        return Duration.ofMillis(clamped);
+    }
+
+    /**
+     * Forgets a query whose SearchActor stopped.
+     *
+     * @param query The search query.
+     */
+    public void remove(String query) {
+        queries.remove(query);
+    }
+
+    /**
+     * Gets the current interval, the rate of new videos and the subscribers per query.
+     *
+     * @return The statistics as JSON.
+     */
+    public ObjectNode stats() {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        queries.forEach((query, polling) -> {
+            ObjectNode queryJson = json.putObject(query);
+            synchronized (polling) {
+                queryJson.put("intervalSeconds", polling.intervalMillis / 1000);
+                queryJson.put("newVideosPerHour", polling.newVideosPerHour);
+                queryJson.put("subscribers", polling.subscribers);
+            }
+        });
+        return json;
+    }
+
+    private static long millis(Config config, String key, Duration fallback) {
+        String path = CONFIG_PATH + "." + key;
+        return (config.hasPath(path) ? config.getDuration(path) : fallback).toMillis();
+    }
+
+    private final class QueryPolling {
+        boolean measured;
+        double newVideosPerHour;
+        int subscribers;
+        volatile long intervalMillis = initialMillis;
+        private long lastRoundAt;
+
+        synchronized void record(int newVideos, long now) {
+            if (lastRoundAt > 0 && now > lastRoundAt) {
+                double rate = newVideos * HOUR_MILLIS / (now - lastRoundAt);
+                newVideosPerHour = measured ? RATE_WEIGHT * rate + (1 - RATE_WEIGHT) * newVideosPerHour : rate;
+                measured = true;
+            }
+            lastRoundAt = now;
+        }
+    }
+}
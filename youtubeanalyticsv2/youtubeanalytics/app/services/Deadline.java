@@ -0,0 +1,56 @@
+package services;
+
+import java.time.Duration;
+
+/**
+ * A point in time by which a unit of work, such as one search round, has to be done.
+ * It is set once when the work starts and handed to every downstream call, whose timeouts
+ * are derived from the time left instead of being fixed.
+ *
+ * @author Vatsal Dadia
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Creates a deadline the given time from now.
+     *
+     * @param budget The time available.
+     * @return The deadline.
+     */
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * Gets the time left, at least one millisecond, so it can be used as a timeout.
+     *
+     * @return The time left.
+     */
+    public Duration timeLeft() {
+        return Duration.ofMillis(Math.max(1, remainingMillis()));
+    }
+
+    /**
+     * Gets the milliseconds left; negative once the deadline has passed.
+     *
+     * @return The milliseconds left.
+     */
+    public long remainingMillis() {
+        return (deadlineNanos - System.nanoTime()) / 1_000_000;
+    }
+
+    /**
+     * Checks whether the deadline has passed.
+     *
+     * @return True if no time is left.
+     */
+    public boolean isOverdue() {
+        return remainingMillis() <= 0;
+    }
+}
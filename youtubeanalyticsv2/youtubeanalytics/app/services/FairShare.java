@@ -0,0 +1,50 @@
+package services;
+
+/**
+ * The user an upstream API request is charged to, and the weight of the request in that
+ * user's share. While the requests in flight are at their limit, waiting requests are sent
+ * in proportion to the shares of their users rather than in arrival order, so one user
+ * searching for many queries cannot crowd out the others.
+ *
+ * @author Vatsal Dadia
+ */
+public final class FairShare {
+
+    /**
+     * The share of work that is not done on behalf of a particular user, such as the
+     * prefetch of channel profiles.
+     */
+    public static final FairShare SHARED = new FairShare("shared", 1);
+
+    private final String flow;
+    private final int weight;
+
+    /**
+     * Creates the share of a user.
+     *
+     * @param flow   The user, or session, the requests are charged to.
+     * @param weight The weight of the requests, e.g. the number of users they serve.
+     */
+    public FairShare(String flow, int weight) {
+        this.flow = flow;
+        this.weight = Math.max(1, weight);
+    }
+
+    /**
+     * Gets the user, or session, the requests are charged to.
+     *
+     * @return The flow key.
+     */
+    public String flow() {
+        return flow;
+    }
+
+    /**
+     * Gets the weight of the requests in the share of their user.
+     *
+     * @return The weight, at least 1.
+     */
+    public int weight() {
+        return weight;
+    }
+}
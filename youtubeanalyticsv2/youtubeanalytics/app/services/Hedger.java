@@ -0,0 +1,172 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hedges slow requests to cut tail latency.
+ * A request still running after the configured percentile of the recent latencies of its
+ * endpoint is sent a second time, and whichever copy succeeds first wins. Hedges are
+ * capped at a percentage of the requests of the endpoint, so a slow API is not flooded.
+ *
+ * @author Vatsal Dadia
+ */
+class Hedger {
+
+    private static final int SAMPLES = 256;
+
+    private final boolean enabled;
+    private final Set<String> paths;
+    private final double percentile;
+    private final int minSamples;
+    private final double budgetPercent;
+    private final Map<String, EndpointHedging> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for Hedger.
+     *
+     * @param config The hedging configuration; hedging is off unless it is enabled there.
+     * @author Vatsal Dadia
+     */
+    Hedger(Config config) {
+        this.enabled = config.hasPath("enabled") && config.getBoolean("enabled");
+        this.paths = new HashSet<>(
+            config.hasPath("paths") ? config.getStringList("paths") : Collections.singletonList("/videos")
+        );
+        this.percentile = config.hasPath("percentile") ? config.getDouble("percentile") : 0.95;
+        this.minSamples = config.hasPath("min-samples") ? config.getInt("min-samples") : 20;
+        this.budgetPercent = config.hasPath("budget-percent") ? config.getDouble("budget-percent") : 5;
+    }
+
+    /**
+     * Runs a request, hedging it if it is slower than usual for its endpoint.
+     *
+     * @param path The endpoint path.
+     * @param call Sends the request; called a second time for the hedge.
+     * @param <T> The type of the response.
+     * @return A CompletionStage with the first successful response.
+     * @author Vatsal Dadia
+     */
+    <T> CompletionStage<T> execute(String path, Supplier<CompletionStage<T>> call) {
+        if (!enabled || !paths.contains(path)) {
+            return call.get();
+        }
+        EndpointHedging endpoint = endpoints.computeIfAbsent(path, p -> new EndpointHedging());
+        endpoint.requests.incrementAndGet();
+        long delayMillis = endpoint.latencyPercentile(percentile, minSamples);
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        AtomicLong hedgeWonAt = new AtomicLong();
+        long start = System.nanoTime();
+        call.get().whenComplete((response, error) -> {
+            long end = System.nanoTime();
+            if (error == null) {
+                endpoint.record((end - start) / 1_000_000);
+                if (!result.complete(response) && hedgeWonAt.get() > 0) {
+                    // The primary answered later: the difference is the latency saved
+                    endpoint.latencySavedMillis.addAndGet((end - hedgeWonAt.get()) / 1_000_000);
+                }
+            } else if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+        if (delayMillis < 0) {
+            return result;
+        }
+
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            if (result.isDone() || !endpoint.tryAcquireHedge(budgetPercent)) {
+                return;
+            }
+            running.incrementAndGet();
+            long hedgeStart = System.nanoTime();
+            call.get().whenComplete((response, error) -> {
+                long end = System.nanoTime();
+                if (error == null) {
+                    endpoint.record((end - hedgeStart) / 1_000_000);
+                    hedgeWonAt.set(end);
+                    if (result.complete(response)) {
+                        endpoint.hedgeWins.incrementAndGet();
+                    }
+                } else if (running.decrementAndGet() == 0) {
+                    result.completeExceptionally(error);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Gets the hedge rate, the hedges that won and the latency they saved per endpoint.
+     *
+     * @return The statistics as JSON.
+     * @author Vatsal Dadia
+     */
+    ObjectNode stats() {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        endpoints.forEach((path, endpoint) -> json.set(path, endpoint.toJson(percentile, minSamples)));
+        return json;
+    }
+
+    private static final class EndpointHedging {
+
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong hedges = new AtomicLong();
+        final AtomicLong hedgeWins = new AtomicLong();
+        final AtomicLong latencySavedMillis = new AtomicLong();
+        private final long[] latencies = new long[SAMPLES];
+        private long recorded;
+
+        synchronized void record(long latencyMillis) {
+            latencies[(int) (recorded++ % SAMPLES)] = latencyMillis;
+        }
+
+        /**
+         * Gets a percentile of the recent latencies, or -1 while there are too few samples.
+         */
+        synchronized long latencyPercentile(double percentile, int minSamples) {
+            int count = (int) Math.min(recorded, SAMPLES);
+            if (count < minSamples || count == 0) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(count - 1, Math.ceil(percentile * count) - 1)];
+        }
+
+        boolean tryAcquireHedge(double budgetPercent) {
+            long hedged = hedges.incrementAndGet();
+            if (hedged * 100.0 > budgetPercent * requests.get()) {
+                hedges.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        ObjectNode toJson(double percentile, int minSamples) {
+            ObjectNode json = JsonNodeFactory.instance.objectNode();
+            long requestCount = requests.get();
+            json.put("requests", requestCount);
+            json.put("hedges", hedges.get());
+            json.put("hedgeRate", requestCount == 0 ? 0.0 : (double) hedges.get() / requestCount);
+            json.put("hedgeWins", hedgeWins.get());
+            json.put("latencySavedMillis", latencySavedMillis.get());
+            json.put("hedgeDelayMillis", latencyPercentile(percentile, minSamples));
+            return json;
+        }
+    }
+}
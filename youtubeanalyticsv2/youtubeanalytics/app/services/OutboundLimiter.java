@@ -0,0 +1,359 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import messages.Messages.WorkClass;
+
+/**
+ * Limits the YouTube Data API requests in flight, with a limit that adapts to the observed
+ * latency. The lowest latency seen in a window of samples stands for the unloaded API; a
+ * request slower than a tolerated multiple of it, or failing, cuts the limit by a tenth,
+ * and fast requests sent while the limit was at least half used raise it by one per
+ * limit's worth of requests. Requests beyond the limit wait in one queue per work class
+ * for at most the maximum wait, and a freed slot goes to a waiting interactive request
+ * before any background refresh, so a user's first search is not stuck behind the polls
+ * of other queries. Within a work class, waiting requests are taken by self-clocked fair
+ * queuing over the users they are charged to: each request is tagged with the virtual time
+ * its user's share would finish it, its quota cost divided by its weight after the user's
+ * previous waiting request, and the lowest tag goes first. A user with many requests
+ * waiting thus gets their share of the freed slots, not all of them.
+ *
+ * @author Vatsal Dadia
+ */
+class OutboundLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    // The unloaded latency is learned again after this many samples
+    private static final int RTT_WINDOW = 1000;
+
+    private final int maxConcurrent;
+    private final int minConcurrent;
+    private final long maxWaitNanos;
+    private final double latencyTolerance;
+    private final Map<WorkClass, FairQueue> waiting = new EnumMap<>(WorkClass.class);
+    private final Map<WorkClass, ClassStats> classStats = new EnumMap<>(WorkClass.class);
+    private double limit;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long samples;
+    private long increases;
+    private long decreases;
+
+    /**
+     * Constructor for OutboundLimiter.
+     *
+     * @param config The limiter configuration; requests are not limited unless
+     *               {@code max-concurrent} is set there.
+     * @author Vatsal Dadia
+     */
+    OutboundLimiter(Config config) {
+        this.maxConcurrent = config.hasPath("max-concurrent") ? config.getInt("max-concurrent") : 0;
+        this.minConcurrent = Math.max(1, Math.min(maxConcurrent,
+                config.hasPath("min-concurrent") ? config.getInt("min-concurrent") : 4));
+        this.limit = Math.max(minConcurrent, Math.min(maxConcurrent,
+                config.hasPath("initial-concurrent") ? config.getInt("initial-concurrent") : 16));
+        this.maxWaitNanos = config.hasPath("max-wait")
+                ? config.getDuration("max-wait").toNanos()
+                : TimeUnit.SECONDS.toNanos(2);
+        this.latencyTolerance = config.hasPath("latency-tolerance")
+                ? config.getDouble("latency-tolerance")
+                : 2.0;
+        for (WorkClass workClass : WorkClass.values()) {
+            waiting.put(workClass, new FairQueue());
+            classStats.put(workClass, new ClassStats());
+        }
+    }
+
+    /**
+     * Sends a request of the shared share once a slot is free.
+     *
+     * @param workClass The work class the request belongs to.
+     * @param call      Sends the request.
+     * @param <T>       The type of the response.
+     * @return A CompletionStage with the response; it fails with a {@link TimeoutException}
+     *         if no slot was free within the maximum wait.
+     * @author Vatsal Dadia
+     */
+    <T> CompletionStage<T> submit(WorkClass workClass, Supplier<CompletionStage<T>> call) {
+        return submit(workClass, FairShare.SHARED, 1, null, call);
+    }
+
+    /**
+     * Sends a request once a slot is free and its user's turn has come.
+     *
+     * @param workClass The work class the request belongs to.
+     * @param share     The user the request is charged to.
+     * @param cost      The quota cost of the request.
+     * @param deadline  The deadline of the work the request belongs to, or null. A request
+     *                  whose deadline passed while it waited is not sent; its slot is given
+     *                  back without counting as a failure.
+     * @param call      Sends the request.
+     * @param <T>       The type of the response.
+     * @return A CompletionStage with the response; it fails with a {@link TimeoutException}
+     *         if no slot was free within the maximum wait or before the deadline.
+     * @author Vatsal Dadia
+     */
+    <T> CompletionStage<T> submit(WorkClass workClass, FairShare share, int cost, Deadline deadline,
+            Supplier<CompletionStage<T>> call) {
+        if (maxConcurrent <= 0) {
+            return call.get();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Waiter waiter = new Waiter(workClass, result,
+                inFlightAtSend -> send(workClass, deadline, call, result, inFlightAtSend));
+        int admittedWith;
+        synchronized (this) {
+            if (inFlight >= currentLimit()) {
+                waiter.enqueuedAt = System.nanoTime();
+                classStats.get(workClass).queued.incrementAndGet();
+                waiting.get(workClass).add(waiter, share, cost);
+                CompletableFuture.delayedExecutor(maxWaitNanos, TimeUnit.NANOSECONDS)
+                        .execute(() -> expire(waiter));
+                return result;
+            }
+            admittedWith = ++inFlight;
+            classStats.get(workClass).admitted.incrementAndGet();
+        }
+        waiter.start.send(admittedWith);
+        return result;
+    }
+
+    /**
+     * Gets the current limit of requests in flight.
+     *
+     * @return The limit.
+     */
+    synchronized int currentLimit() {
+        return Math.max(minConcurrent, (int) limit);
+    }
+
+    /**
+     * Adjusts the limit with the latency of a finished request.
+     *
+     * @param rttNanos       The latency of the request.
+     * @param failed         Whether the request failed.
+     * @param inFlightAtSend The requests in flight when it was sent, itself included.
+     */
+    void onSample(long rttNanos, boolean failed, int inFlightAtSend) {
+        List<Waiter> admitted;
+        synchronized (this) {
+            if (!failed) {
+                minRttNanos = ++samples % RTT_WINDOW == 0 ? rttNanos : Math.min(minRttNanos, rttNanos);
+            }
+            if (failed || rttNanos > minRttNanos * latencyTolerance) {
+                limit = Math.max(minConcurrent, limit * BACKOFF_RATIO);
+                decreases++;
+            } else if (inFlightAtSend * 2 >= limit && limit < maxConcurrent) {
+                limit = Math.min(maxConcurrent, limit + 1.0 / limit);
+                increases++;
+            }
+            admitted = admitWaiting();
+        }
+        startAll(admitted);
+    }
+
+    /**
+     * Gets the current limit, the requests in flight, and the requests admitted, queued,
+     * timed out, dropped past their deadline and waiting, the users waiting and the time in the queue per work class.
+     *
+     * @return The statistics as JSON.
+     * @author Vatsal Dadia
+     */
+    synchronized ObjectNode stats() {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.put("limit", currentLimit());
+        json.put("minConcurrent", minConcurrent);
+        json.put("maxConcurrent", maxConcurrent);
+        json.put("inFlight", inFlight);
+        json.put("minLatencyMillis", minRttNanos == Long.MAX_VALUE ? 0 : minRttNanos / 1_000_000);
+        json.put("increases", increases);
+        json.put("decreases", decreases);
+        for (WorkClass workClass : WorkClass.values()) {
+            ClassStats stats = classStats.get(workClass);
+            ObjectNode classJson = json.putObject(workClass.name().toLowerCase());
+            classJson.put("admitted", stats.admitted.get());
+            classJson.put("queued", stats.queued.get());
+            classJson.put("timedOut", stats.timedOut.get());
+            classJson.put("overdue", stats.overdue.get());
+            classJson.put("waiting", waiting.get(workClass).size());
+            classJson.put("waitingUsers", waiting.get(workClass).flows());
+            long dequeued = stats.dequeued.get();
+            classJson.put("avgQueueMillis", dequeued == 0 ? 0 : stats.queueNanos.get() / dequeued / 1_000_000);
+            classJson.put("maxQueueMillis", stats.maxQueueNanos.get() / 1_000_000);
+        }
+        return json;
+    }
+
+    private <T> void send(WorkClass workClass, Deadline deadline, Supplier<CompletionStage<T>> call,
+            CompletableFuture<T> result, int inFlightAtSend) {
+        if (deadline != null && deadline.isOverdue()) {
+            // Never sent, so it says nothing about the latency of the API
+            classStats.get(workClass).overdue.incrementAndGet();
+            release();
+            result.completeExceptionally(new TimeoutException("Deadline passed while waiting for a slot"));
+            return;
+        }
+        long sentAt = System.nanoTime();
+        CompletionStage<T> sent;
+        try {
+            sent = call.get();
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((response, error) -> {
+            release();
+            onSample(System.nanoTime() - sentAt, error != null, inFlightAtSend);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(response);
+            }
+        });
+    }
+
+    private void release() {
+        List<Waiter> admitted;
+        synchronized (this) {
+            inFlight--;
+            admitted = admitWaiting();
+        }
+        startAll(admitted);
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!waiting.get(waiter.workClass).remove(waiter)) {
+                return;
+            }
+            classStats.get(waiter.workClass).timedOut.incrementAndGet();
+        }
+        waiter.result.completeExceptionally(
+                new TimeoutException("No outbound slot within " + maxWaitNanos / 1_000_000 + "ms"));
+    }
+
+    /**
+     * Takes waiting requests, interactive first and in fair order within a work class, while
+     * the limit allows. Must be called holding the lock; the requests are started after
+     * releasing it.
+     */
+    private List<Waiter> admitWaiting() {
+        List<Waiter> admitted = new ArrayList<>();
+        long now = System.nanoTime();
+        for (WorkClass workClass : WorkClass.values()) {
+            FairQueue queue = waiting.get(workClass);
+            while (inFlight < currentLimit() && !queue.isEmpty()) {
+                Waiter waiter = queue.poll();
+                waiter.admittedWith = ++inFlight;
+                ClassStats stats = classStats.get(workClass);
+                stats.admitted.incrementAndGet();
+                long queued = now - waiter.enqueuedAt;
+                stats.dequeued.incrementAndGet();
+                stats.queueNanos.addAndGet(queued);
+                stats.maxQueueNanos.accumulateAndGet(queued, Math::max);
+                admitted.add(waiter);
+            }
+        }
+        return admitted;
+    }
+
+    private static void startAll(List<Waiter> admitted) {
+        admitted.forEach(waiter -> waiter.start.send(waiter.admittedWith));
+    }
+
+    private interface Start {
+        void send(int inFlightAtSend);
+    }
+
+    private static final class Waiter {
+        final WorkClass workClass;
+        final CompletableFuture<?> result;
+        final Start start;
+        long enqueuedAt;
+        int admittedWith;
+        String flow;
+        double finishTag;
+        long sequence;
+
+        Waiter(WorkClass workClass, CompletableFuture<?> result, Start start) {
+            this.workClass = workClass;
+            this.result = result;
+            this.start = start;
+        }
+    }
+
+    /**
+     * The waiting requests of one work class, ordered by their virtual finish tags. The
+     * virtual time is the tag of the request taken last.
+     */
+    private static final class FairQueue {
+        private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+                Comparator.<Waiter>comparingDouble(waiter -> waiter.finishTag)
+                        .thenComparingLong(waiter -> waiter.sequence));
+        private final Map<String, Double> lastFinishTags = new HashMap<>();
+        private double virtualTime;
+        private long sequence;
+
+        void add(Waiter waiter, FairShare share, int cost) {
+            double start = Math.max(virtualTime, lastFinishTags.getOrDefault(share.flow(), 0.0));
+            waiter.flow = share.flow();
+            waiter.finishTag = start + (double) Math.max(1, cost) / share.weight();
+            waiter.sequence = sequence++;
+            lastFinishTags.put(share.flow(), waiter.finishTag);
+            queue.add(waiter);
+        }
+
+        Waiter poll() {
+            Waiter waiter = queue.poll();
+            virtualTime = waiter.finishTag;
+            // A user whose requests were all taken starts again from the virtual time
+            lastFinishTags.values().removeIf(finishTag -> finishTag <= virtualTime);
+            return waiter;
+        }
+
+        boolean remove(Waiter waiter) {
+            if (!queue.remove(waiter)) {
+                return false;
+            }
+            if (queue.stream().noneMatch(other -> other.flow.equals(waiter.flow))) {
+                lastFinishTags.remove(waiter.flow);
+            }
+            return true;
+        }
+
+        boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        int size() {
+            return queue.size();
+        }
+
+        int flows() {
+            return lastFinishTags.size();
+        }
+    }
+
+    private static final class ClassStats {
+        final AtomicLong admitted = new AtomicLong();
+        final AtomicLong queued = new AtomicLong();
+        final AtomicLong timedOut = new AtomicLong();
+        final AtomicLong overdue = new AtomicLong();
+        final AtomicLong dequeued = new AtomicLong();
+        final AtomicLong queueNanos = new AtomicLong();
+        final AtomicLong maxQueueNanos = new AtomicLong();
+    }
+}
@@ -0,0 +1,275 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Owns the poll schedules of all search queries on a hashed timing wheel.
+ * Each query has a single entry, linked into the slot of the wheel tick it is due at, so
+ * scheduling and cancelling take constant time and memory per query. Delays are jittered
+ * so schedules created together spread out instead of firing together. Due polls are
+ * triggered under a global limit of rounds in flight; polls due beyond the limit wait in
+ * order until a running round is released. Rounds started outside the schedule, such as
+ * for a new subscriber, acquire a slot under the same limit.
+ *
+ * @author Vatsal Dadia
+ */
+public class PollScheduler {
+
+    private static final String CONFIG_PATH = "youtube.search.scheduler";
+
+    private final long tickMillis;
+    private final int mask;
+    private final double jitter;
+    private final int maxInFlight;
+    private final Entry[] wheel;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final ArrayDeque<Entry> waiting = new ArrayDeque<>();
+    private long currentTick;
+    private int inFlight;
+    private long dispatched;
+    private long delayed;
+    private long acquired;
+
+    /**
+     * Creates the scheduler configured under {@code youtube.search.scheduler}. The wheel
+     * size is rounded up to a power of two.
+     *
+     * @param config The application configuration.
+     */
+    public PollScheduler(Config config) {
+        Config scheduler = config.hasPath(CONFIG_PATH) ? config.getConfig(CONFIG_PATH) : null;
+        this.tickMillis = scheduler != null && scheduler.hasPath("tick-duration")
+                ? Math.max(1, scheduler.getDuration("tick-duration").toMillis())
+                : 1000;
+        int wheelSize = scheduler != null && scheduler.hasPath("wheel-size")
+                ? scheduler.getInt("wheel-size")
+                : 2048;
+        this.jitter = scheduler != null && scheduler.hasPath("jitter")
+                ? Math.max(0.0, Math.min(1.0, scheduler.getDouble("jitter")))
+                : 0.2;
+        this.maxInFlight = scheduler != null && scheduler.hasPath("max-in-flight")
+                ? Math.max(1, scheduler.getInt("max-in-flight"))
+                : 32;
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Gets the time the wheel advances by on each call to {@link #tick()}.
+     *
+     * @return The tick duration.
+     */
+    public Duration tickDuration() {
+        return Duration.ofMillis(tickMillis);
+    }
+
+    /**
+     * Schedules the next poll of a query, replacing its pending one.
+     *
+     * @param key     The search query.
+     * @param delay   The time until the poll, before jitter.
+     * @param trigger Starts the poll; run outside the scheduler's lock.
+     */
+    public synchronized void schedule(String key, Duration delay, Runnable trigger) {
+        Entry entry = entries.computeIfAbsent(key, Entry::new);
+        entry.trigger = trigger;
+        unlink(entry);
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        long ticks = Math.max(1, (long) Math.ceil(delay.toMillis() * factor / tickMillis));
+        entry.deadlineTick = currentTick + ticks;
+        link(entry);
+    }
+
+    /**
+     * Asks for a slot to run a round of a query outside its schedule. The grant runs once
+     * the query holds a slot, right away if it already does; the round must then be
+     * released like a scheduled one. Urgent requests wait ahead of due polls.
+     *
+     * @param key    The search query.
+     * @param urgent Whether a user waits on the round.
+     * @param grant  Starts the round; run outside the scheduler's lock.
+     */
+    public void acquire(String key, boolean urgent, Runnable grant) {
+        List<Runnable> triggers = new ArrayList<>(1);
+        synchronized (this) {
+            Entry entry = entries.computeIfAbsent(key, Entry::new);
+            if (entry.inFlight) {
+                triggers.add(grant);
+            } else {
+                entry.grant = grant;
+                if (!entry.waiting) {
+                    entry.waiting = true;
+                    if (urgent) {
+                        waiting.addFirst(entry);
+                    } else {
+                        waiting.add(entry);
+                    }
+                }
+                acquired++;
+                dispatchWaiting(triggers);
+            }
+        }
+        triggers.forEach(Runnable::run);
+    }
+
+    /**
+     * Ends the round of a query triggered by this scheduler, so a waiting poll can start.
+     * Does nothing if no round of the query holds a slot.
+     *
+     * @param key The search query.
+     */
+    public void release(String key) {
+        List<Runnable> triggers = new ArrayList<>(1);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null || !entry.inFlight) {
+                return;
+            }
+            entry.inFlight = false;
+            inFlight--;
+            dispatchWaiting(triggers);
+        }
+        triggers.forEach(Runnable::run);
+    }
+
+    /**
+     * Forgets a query whose SearchActor stopped, releasing its slot if it holds one.
+     *
+     * @param key The search query.
+     */
+    public void cancel(String key) {
+        release(key);
+        synchronized (this) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                unlink(entry);
+                entry.grant = null;
+                if (entry.waiting) {
+                    waiting.remove(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel by one tick and triggers the polls that are due, as far as the
+     * limit of rounds in flight allows.
+     */
+    public void tick() {
+        List<Runnable> triggers = new ArrayList<>();
+        synchronized (this) {
+            currentTick++;
+            Entry entry = wheel[(int) (currentTick & mask)];
+            while (entry != null) {
+                Entry next = entry.next;
+                if (entry.deadlineTick <= currentTick) {
+                    unlink(entry);
+                    if (entry.inFlight) {
+                        // The query already holds a slot; its SearchActor coalesces the poll
+                        triggers.add(entry.trigger);
+                    } else if (!entry.waiting) {
+                        entry.waiting = true;
+                        waiting.add(entry);
+                    }
+                }
+                entry = next;
+            }
+            dispatchWaiting(triggers);
+        }
+        triggers.forEach(Runnable::run);
+    }
+
+    /**
+     * Gets the number of scheduled queries, the rounds in flight, the polls waiting for
+     * a slot, and the polls triggered and slots acquired outside the schedule so far.
+     *
+     * @return The statistics as JSON.
+     */
+    public synchronized ObjectNode stats() {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.put("scheduled", entries.size());
+        json.put("inFlight", inFlight);
+        json.put("maxInFlight", maxInFlight);
+        json.put("waiting", waiting.size());
+        json.put("dispatched", dispatched);
+        json.put("delayed", delayed);
+        json.put("acquired", acquired);
+        json.put("tickMillis", tickMillis);
+        json.put("wheelSize", wheel.length);
+        return json;
+    }
+
+    private void dispatchWaiting(List<Runnable> triggers) {
+        while (inFlight < maxInFlight && !waiting.isEmpty()) {
+            Entry entry = waiting.poll();
+            entry.waiting = false;
+            entry.inFlight = true;
+            inFlight++;
+            dispatched++;
+            if (entry.grant != null) {
+                // A round outside the schedule asked for the slot; its owner reschedules the poll
+                triggers.add(entry.grant);
+                entry.grant = null;
+                continue;
+            }
+            if (entry.deadlineTick < currentTick) {
+                delayed++;
+            }
+            triggers.add(entry.trigger);
+        }
+    }
+
+    private void link(Entry entry) {
+        int slot = (int) (entry.deadlineTick & mask);
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = wheel[slot];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        wheel[slot] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.slot < 0) {
+            return;
+        }
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            wheel[entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.slot = -1;
+    }
+
+    private static final class Entry {
+        final String key;
+        Runnable trigger;
+        Runnable grant;
+        long deadlineTick;
+        int slot = -1;
+        Entry prev;
+        Entry next;
+        boolean waiting;
+        boolean inFlight;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate at which each user starts searching for new queries, with a token
+ * bucket per user. Every new query takes a token; a bucket holds at most
+ * {@code capacity} tokens and gains one every {@code refill-interval}, so a user can
+ * start a burst of searches and then one per interval. A new query is what makes the node
+ * poll the API for another query, so this bounds the upstream work one user can add.
+ *
+ * @author Vatsal Dadia
+ */
+public class QueryRateLimiter {
+
+    private static final String CONFIG_PATH = "youtube.users.new-queries";
+    // Full buckets carry no state and are dropped once this many users are tracked
+    private static final int MAX_TRACKED_USERS = 10_000;
+
+    private final double capacity;
+    private final long refillNanos;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    /**
+     * Creates the limiter configured under {@code youtube.users.new-queries}. Without
+     * configuration, a user may start 5 new queries at once and one more every 10 seconds.
+     *
+     * @param config The application configuration.
+     */
+    public QueryRateLimiter(Config config) {
+        Config limits = config.hasPath(CONFIG_PATH) ? config.getConfig(CONFIG_PATH) : null;
+        this.capacity = Math.max(1, limits != null && limits.hasPath("capacity")
+                ? limits.getInt("capacity")
+                : 5);
+        this.refillNanos = Math.max(1, (limits != null && limits.hasPath("refill-interval")
+                ? limits.getDuration("refill-interval")
+                : Duration.ofSeconds(10)).toNanos());
+    }
+
+    /**
+     * Takes a token from the bucket of a user, if one is left.
+     *
+     * @param user The user, or session, starting a new query.
+     * @return Zero if the query may start, otherwise the time until the user's next token.
+     */
+    public Duration tryAcquire(String user) {
+        return tryAcquire(user, System.nanoTime());
+    }
+
+    Duration tryAcquire(String user, long now) {
+        if (buckets.size() > MAX_TRACKED_USERS) {
+            buckets.values().removeIf(bucket -> bucket.isFull(now));
+        }
+        Duration wait = buckets.computeIfAbsent(user, u -> new Bucket(now)).take(now);
+        (wait.isZero() ? admitted : throttled).incrementAndGet();
+        return wait;
+    }
+
+    /**
+     * Gets the bucket settings, the users tracked and the new queries admitted and throttled.
+     *
+     * @return The statistics as JSON.
+     */
+    public ObjectNode stats() {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.put("capacity", (int) capacity);
+        json.put("refillSeconds", refillNanos / 1e9);
+        json.put("users", buckets.size());
+        json.put("admitted", admitted.get());
+        json.put("throttled", throttled.get());
+        return json;
+    }
+
+    private final class Bucket {
+        private double tokens = capacity;
+        private long refilledAt;
+
+        Bucket(long now) {
+            this.refilledAt = now;
+        }
+
+        synchronized Duration take(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens--;
+                return Duration.ZERO;
+            }
+            return Duration.ofNanos((long) Math.ceil((1 - tokens) * refillNanos));
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (double) (now - refilledAt) / refillNanos);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package services;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Counts the YouTube Data API quota units spent today. The quota resets at midnight
+ * Pacific Time; a /search call costs 100 units and the other calls used here cost one.
+ *
+ * @author Vatsal Dadia
+ */
+public class QuotaTracker {
+
+    private static final ZoneId QUOTA_ZONE = ZoneId.of("America/Los_Angeles");
+    private static final int SEARCH_COST = 100;
+    // Spending early in the day is measured against at least an hour of the day
+    private static final double MIN_ELAPSED_SHARE = 1.0 / 24;
+
+    private final long dailyUnits;
+    private final Clock clock;
+    private LocalDate day;
+    private long used;
+
+    /**
+     * Creates a tracker for the given daily quota.
+     *
+     * @param dailyUnits The quota units available per day.
+     */
+    public QuotaTracker(long dailyUnits) {
+        this(dailyUnits, Clock.system(QUOTA_ZONE));
+    }
+
+    QuotaTracker(long dailyUnits, Clock clock) {
+        this.dailyUnits = dailyUnits;
+        this.clock = clock;
+        this.day = LocalDate.now(clock.withZone(QUOTA_ZONE));
+    }
+
+    /**
+     * Gets the quota cost of a call to an endpoint.
+     *
+     * @param path The endpoint path.
+     * @return The cost in quota units.
+     */
+    public static int cost(String path) {
+        return "/search".equals(path) ? SEARCH_COST : 1;
+    }
+
+    /**
+     * Records a call sent to an endpoint.
+     *
+     * @param path The endpoint path.
+     */
+    public synchronized void spend(String path) {
+        rollOver();
+        used += cost(path);
+    }
+
+    /**
+     * Marks today's quota as used up, e.g. when the API answered 403 quotaExceeded before
+     * the count reached the daily units. The quota is available again after the reset.
+     *
+     * @return The units that were still left and can no longer be spent today.
+     */
+    public synchronized long exhaust() {
+        rollOver();
+        long forfeited = Math.max(0, dailyUnits - used);
+        used = Math.max(used, dailyUnits);
+        return forfeited;
+    }
+
+    /**
+     * Counts units as used without a call, e.g. the units a key forfeited when it was
+     * reported out of quota. They are available again after the reset.
+     *
+     * @param units The units to count as used.
+     */
+    public synchronized void forfeit(long units) {
+        rollOver();
+        used += units;
+    }
+
+    /**
+     * Gets the quota units left today.
+     *
+     * @return The remaining units, at least 0.
+     */
+    public synchronized long remainingUnits() {
+        rollOver();
+        return Math.max(0, dailyUnits - used);
+    }
+
+    /**
+     * Gets the share of today's quota that is left.
+     *
+     * @return A value between 0 and 1.
+     */
+    public synchronized double remainingFraction() {
+        rollOver();
+        return Math.max(0.0, 1.0 - (double) used / dailyUnits);
+    }
+
+    /**
+     * Compares the share of the quota spent with the share of the quota day that has passed.
+     *
+     * @return 1 when spending is on schedule, more when the quota is spent ahead of it.
+     */
+    public synchronized double pacing() {
+        rollOver();
+        ZonedDateTime now = ZonedDateTime.now(clock.withZone(QUOTA_ZONE));
+        double elapsedShare = (double) Duration.between(day.atStartOfDay(QUOTA_ZONE), now).toMillis()
+                / Duration.ofDays(1).toMillis();
+        return ((double) used / dailyUnits) / Math.max(MIN_ELAPSED_SHARE, elapsedShare);
+    }
+
+    /**
+     * Gets the units spent and left today, and the pacing of the spending.
+     *
+     * @return The statistics as JSON.
+     */
+    public ObjectNode stats() {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        synchronized (this) {
+            rollOver();
+            json.put("dailyUnits", dailyUnits);
+            json.put("used", used);
+        }
+        json.put("remainingFraction", remainingFraction());
+        json.put("pacing", pacing());
+        return json;
+    }
+
+    private void rollOver() {
+        LocalDate today = LocalDate.now(clock.withZone(QUOTA_ZONE));
+        if (!today.equals(day)) {
+            day = today;
+            used = 0;
+        }
+    }
+}
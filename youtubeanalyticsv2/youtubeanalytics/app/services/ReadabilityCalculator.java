@@ -2,7 +2,9 @@ package services;
 
 import akka.actor.AbstractActor;
 import akka.actor.Props;
+import messages.Messages.Prioritized;
 import messages.Messages.TerminateActor;
+import messages.Messages.WorkClass;
 import services.ReadabilityCalculator.ReadabilityResults;
 
 import java.util.List;
@@ -59,13 +61,23 @@ public class ReadabilityCalculator extends AbstractActor{
      * Message to initialize the readability calculator service.
      * @author Vatsal Dadia
      */
-    public static class initReadabilityCalculatorService {
+    public static class initReadabilityCalculatorService implements Prioritized {
         
         public final String videoId;
         public final String description;
+        public final WorkClass workClass;
         public initReadabilityCalculatorService(String videoId, String message){
+            this(videoId, message, WorkClass.BACKGROUND);
+        }
+        public initReadabilityCalculatorService(String videoId, String message, WorkClass workClass){
             this.videoId = videoId;
             this.description = message;
+            this.workClass = workClass;
+        }
+
+        @Override
+        public WorkClass workClass() {
+            return workClass;
         }
     }
 
@@ -0,0 +1,389 @@
+package services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
+import messages.Messages.WorkClass;
+import play.libs.ws.WSClient;
+import play.libs.ws.WSRequest;
+import play.libs.ws.WSResponse;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * HTTP client for the YouTube Data API, shared by the actors.
+ * The parsed body of the last successful response of every request is remembered with
+ * its ETag, and the next identical request is sent with If-None-Match. When the API
+ * answers 304 Not Modified, the remembered body is returned again and the response is
+ * marked as not modified, so callers can skip re-analysing and re-broadcasting it.
+ * Requests to the configured endpoints are hedged when they are slower than usual.
+ * Requests made under a {@link Deadline} time out when it passes, and transient failures
+ * (5xx responses, timeouts, connection errors) are retried with decorrelated jitter while
+ * the deadline leaves room for another attempt. Every endpoint has a circuit breaker: while
+ * it is open, requests are answered with the last good response, marked as not modified,
+ * instead of being sent to the struggling API, and they are not retried.
+ *
+ * @author Vatsal Dadia
+ */
+public class YoutubeApiClient {
+
+    private static final String YOUTUBE_URL = "https://www.googleapis.com/youtube/v3";
+    private static final int MAX_LAST_RESPONSES = 2000;
+
+    private final WSClient ws;
+    private final Hedger hedger;
+    private final CircuitBreaker circuitBreaker;
+    private final QuotaTracker quota;
+    private final ApiKeyPool keyPool;
+    private final OutboundLimiter limiter;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Map<String, ApiResponse> lastResponses =
+            new LinkedHashMap<String, ApiResponse>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ApiResponse> eldest) {
+                    return size() > MAX_LAST_RESPONSES;
+                }
+            };
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a client without hedging and circuit breakers, sending requests with the
+     * given keys.
+     *
+     * @param ws   The WSClient for making HTTP requests.
+     * @param keys The YouTube Data API keys.
+     */
+    public YoutubeApiClient(WSClient ws, List<String> keys) {
+        this(ws, ConfigFactory.empty().withValue("youtube.api.keys", ConfigValueFactory.fromIterable(keys)));
+    }
+
+    /**
+     * Creates a client hedging, retrying and breaking requests as configured under
+     * {@code youtube.api.hedging}, {@code youtube.api.retry} and
+     * {@code youtube.api.circuit-breaker}, sending them with the keys configured under
+     * {@code youtube.api.keys}, counting the quota configured under
+     * {@code youtube.api.quota}, and limiting the requests in flight as configured under
+     * {@code youtube.api.outbound}.
+     *
+     * @param ws     The WSClient for making HTTP requests.
+     * @param config The application configuration.
+     * @throws com.typesafe.config.ConfigException if no API keys are configured.
+     */
+    public YoutubeApiClient(WSClient ws, Config config) {
+        this.ws = ws;
+        this.hedger = new Hedger(
+                config.hasPath("youtube.api.hedging") ? config.getConfig("youtube.api.hedging") : ConfigFactory.empty());
+        this.circuitBreaker = new CircuitBreaker(config.hasPath("youtube.api.circuit-breaker")
+                ? config.getConfig("youtube.api.circuit-breaker")
+                : ConfigFactory.empty());
+        this.keyPool = new ApiKeyPool(config);
+        long unitsPerKey = config.hasPath("youtube.api.quota.daily-units")
+                ? config.getLong("youtube.api.quota.daily-units")
+                : 10000;
+        // The daily units are per key, so the pool as a whole has the units of all its keys
+        this.quota = new QuotaTracker(Math.max(1, keyPool.size()) * unitsPerKey);
+        this.limiter = new OutboundLimiter(config.hasPath("youtube.api.outbound")
+                ? config.getConfig("youtube.api.outbound")
+                : ConfigFactory.empty());
+        this.baseBackoffMillis = config.hasPath("youtube.api.retry.base-backoff")
+                ? config.getDuration("youtube.api.retry.base-backoff").toMillis()
+                : 100;
+        this.maxBackoffMillis = config.hasPath("youtube.api.retry.max-backoff")
+                ? config.getDuration("youtube.api.retry.max-backoff").toMillis()
+                : 2000;
+    }
+
+    /**
+     * Sends a GET request to an endpoint of the YouTube Data API.
+     *
+     * @param path   The endpoint path, e.g. "/search".
+     * @param params The query parameters, in the order they are sent.
+     * @return A CompletionStage with the response.
+     */
+    public CompletionStage<ApiResponse> get(String path, Map<String, String> params) {
+        return get(path, params, WorkClass.INTERACTIVE);
+    }
+
+    /**
+     * Sends a GET request of a class of work to an endpoint of the YouTube Data API.
+     *
+     * @param path      The endpoint path, e.g. "/search".
+     * @param params    The query parameters, in the order they are sent.
+     * @param workClass The class of work the request belongs to.
+     * @return A CompletionStage with the response.
+     */
+    public CompletionStage<ApiResponse> get(String path, Map<String, String> params, WorkClass workClass) {
+        return attempt(path, params, null, workClass, FairShare.SHARED);
+    }
+
+    /**
+     * Sends a GET request to an endpoint of the YouTube Data API within a deadline.
+     * GET requests are idempotent, so transient failures are retried while time is left.
+     *
+     * @param path     The endpoint path, e.g. "/search".
+     * @param params   The query parameters, in the order they are sent.
+     * @param deadline The deadline of the work the request belongs to.
+     * @return A CompletionStage with the response; it fails once the deadline has passed.
+     */
+    public CompletionStage<ApiResponse> get(String path, Map<String, String> params, Deadline deadline) {
+        return get(path, params, deadline, WorkClass.INTERACTIVE);
+    }
+
+    /**
+     * Sends a GET request of a class of work to an endpoint of the YouTube Data API within
+     * a deadline. Requests of interactive work are sent ahead of background refreshes
+     * while the requests in flight are at their limit.
+     *
+     * @param path      The endpoint path, e.g. "/search".
+     * @param params    The query parameters, in the order they are sent.
+     * @param deadline  The deadline of the work the request belongs to.
+     * @param workClass The class of work the request belongs to.
+     * @return A CompletionStage with the response; it fails once the deadline has passed.
+     */
+    public CompletionStage<ApiResponse> get(
+            String path, Map<String, String> params, Deadline deadline, WorkClass workClass) {
+        return get(path, params, deadline, workClass, FairShare.SHARED);
+    }
+
+    /**
+     * Sends a GET request of a class of work, done on behalf of a user, to an endpoint of
+     * the YouTube Data API within a deadline. While the requests in flight are at their
+     * limit, the waiting requests of a work class are sent in proportion to the shares of
+     * their users.
+     *
+     * @param path      The endpoint path, e.g. "/search".
+     * @param params    The query parameters, in the order they are sent.
+     * @param deadline  The deadline of the work the request belongs to.
+     * @param workClass The class of work the request belongs to.
+     * @param share     The user the request is charged to.
+     * @return A CompletionStage with the response; it fails once the deadline has passed.
+     */
+    public CompletionStage<ApiResponse> get(String path, Map<String, String> params,
+            Deadline deadline, WorkClass workClass, FairShare share) {
+        return getWithRetries(path, params, deadline, workClass, share, baseBackoffMillis);
+    }
+
+    private CompletionStage<ApiResponse> getWithRetries(String path, Map<String, String> params,
+            Deadline deadline, WorkClass workClass, FairShare share, long previousBackoffMillis) {
+        EndpointStats endpointStats = stats.computeIfAbsent(path, p -> new EndpointStats());
+        if (deadline.isOverdue()) {
+            endpointStats.deadlineExceeded.incrementAndGet();
+            CompletableFuture<ApiResponse> overdue = new CompletableFuture<>();
+            overdue.completeExceptionally(new TimeoutException("Deadline passed before " + path));
+            return overdue;
+        }
+        return attempt(path, params, deadline, workClass, share).handle((response, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof CircuitBreaker.CircuitOpenException
+                    || cause instanceof ApiKeyPool.QuotaExhaustedException) {
+                // Retrying would only be rejected again until the circuit half-opens or the
+                // quota resets
+                CompletableFuture<ApiResponse> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(cause);
+                return rejected;
+            }
+            boolean transientFailure = error != null || response.status >= 500;
+            if (!transientFailure) {
+                return CompletableFuture.completedFuture(response);
+            }
+            // Decorrelated jitter: a random backoff between the base and three times the last one
+            long backoff = Math.min(maxBackoffMillis, ThreadLocalRandom.current()
+                    .nextLong(baseBackoffMillis, Math.max(baseBackoffMillis + 1, previousBackoffMillis * 3)));
+            if (deadline.remainingMillis() <= backoff) {
+                if (error != null) {
+                    endpointStats.deadlineExceeded.incrementAndGet();
+                    CompletableFuture<ApiResponse> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(error);
+                    return failed;
+                }
+                return CompletableFuture.completedFuture(response);
+            }
+            endpointStats.retries.incrementAndGet();
+            return CompletableFuture
+                    .runAsync(() -> {}, CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS))
+                    .thenCompose(v -> getWithRetries(path, params, deadline, workClass, share, backoff));
+        }).thenCompose(Function.identity());
+    }
+
+    private CompletionStage<ApiResponse> attempt(String path, Map<String, String> params,
+            Deadline deadline, WorkClass workClass, FairShare share) {
+        String requestKey = requestKey(path, params);
+        EndpointStats endpointStats = stats.computeIfAbsent(path, p -> new EndpointStats());
+        endpointStats.requests.incrementAndGet();
+
+        ApiResponse previous;
+        synchronized (lastResponses) {
+            previous = lastResponses.get(requestKey);
+        }
+        ApiKeyPool.ApiKey apiKey = keyPool.acquire();
+        if (apiKey == null) {
+            endpointStats.quotaExhausted.incrementAndGet();
+            if (previous != null) {
+                // Until the quota resets, the last good response is better than nothing
+                return CompletableFuture.completedFuture(
+                        new ApiResponse(200, previous.body.deepCopy(), previous.etag, true));
+            }
+            CompletableFuture<ApiResponse> exhausted = new CompletableFuture<>();
+            exhausted.completeExceptionally(new ApiKeyPool.QuotaExhaustedException(path));
+            return exhausted;
+        }
+
+        WSRequest request = ws.url(YOUTUBE_URL + path);
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            // The key comes from the pool, whatever the caller passed
+            if (!"key".equals(param.getKey())) {
+                request = request.addQueryParameter(param.getKey(), param.getValue());
+            }
+        }
+        request = request.addQueryParameter("key", apiKey.value);
+        if (previous != null && previous.etag != null) {
+            endpointStats.conditional.incrementAndGet();
+            request = request.addHeader("If-None-Match", previous.etag);
+        }
+
+        WSRequest conditionalRequest = request;
+        return circuitBreaker.execute(path, () -> {
+            // The primary and a hedge each take a slot of the limiter, so both are bounded
+            // and their latencies adapt the limit
+            CompletableFuture<WSResponse> sent = hedger.execute(path, () -> limiter.submit(
+                    workClass, share, QuotaTracker.cost(path), deadline, () -> {
+                        quota.spend(path);
+                        apiKey.spend(path);
+                        return conditionalRequest.get();
+                    })).toCompletableFuture();
+            if (deadline != null) {
+                sent = sent.orTimeout(deadline.timeLeft().toMillis(), TimeUnit.MILLISECONDS);
+            }
+            return sent.thenApply(wsResponse -> {
+                if (wsResponse.getStatus() == 304 && previous != null) {
+                    endpointStats.notModified.incrementAndGet();
+                    return new ApiResponse(200, previous.body.deepCopy(), previous.etag, true);
+                }
+                JsonNode body = wsResponse.asJson();
+                String etag = wsResponse.getSingleHeader("ETag")
+                        .orElse(body != null && body.has("etag") ? body.get("etag").asText() : null);
+                ApiResponse response = new ApiResponse(wsResponse.getStatus(), body, etag, false);
+                if (response.status == 200 && body != null) {
+                    synchronized (lastResponses) {
+                        // Callers modify the returned tree, so a private copy is remembered
+                        lastResponses.put(requestKey, new ApiResponse(200, body.deepCopy(), etag, false));
+                    }
+                }
+                return response;
+            });
+        }, response -> response.status >= 500, () -> previous == null
+                ? null
+                : new ApiResponse(200, previous.body.deepCopy(), previous.etag, true))
+                .thenCompose(response -> {
+                    if (!ApiKeyPool.isQuotaExceeded(response.status, response.body)) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    // The key ran out before its count says so; another one may have quota left.
+                    // Its unspent units are gone for the pool too, so the poll pacing sees them
+                    quota.forfeit(apiKey.quarantine());
+                    endpointStats.quotaExceeded.incrementAndGet();
+                    return attempt(path, params, deadline, workClass, share);
+                });
+    }
+
+    /**
+     * Gets the number of requests, conditional requests and 304 responses per endpoint.
+     * The 304 responses of "/search" are the polls that were short-circuited. The state,
+     * the state transitions and the fallback hits of the circuit breakers, the quota
+     * spent today in total and per key, and the requests admitted per work class are
+     * included.
+     *
+     * @return The per-endpoint statistics as JSON.
+     */
+    public ObjectNode stats() {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        stats.forEach((path, endpointStats) -> json.set(path, endpointStats.toJson()));
+        synchronized (lastResponses) {
+            json.put("lastResponses", lastResponses.size());
+        }
+        json.set("hedging", hedger.stats());
+        json.set("circuitBreakers", circuitBreaker.stats());
+        json.set("quota", quota.stats());
+        json.set("keys", keyPool.stats());
+        json.set("outbound", limiter.stats());
+        return json;
+    }
+
+    /**
+     * Gets the tracker of the quota spent by the requests sent today.
+     *
+     * @return The quota tracker.
+     */
+    public QuotaTracker quota() {
+        return quota;
+    }
+
+    /**
+     * Identifies a request by its path and parameters. The API key is left out, so a
+     * rotated key still matches the stored ETag.
+     */
+    private static String requestKey(String path, Map<String, String> params) {
+        Map<String, String> sorted = new TreeMap<>(params);
+        sorted.remove("key");
+        return path + "?" + sorted;
+    }
+
+    /**
+     * A response of the YouTube Data API with its parsed body.
+     */
+    public static class ApiResponse {
+        public final int status;
+        public final JsonNode body;
+        public final String etag;
+        public final boolean notModified;
+
+        public ApiResponse(int status, JsonNode body, String etag, boolean notModified) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+            this.notModified = notModified;
+        }
+
+        public JsonNode asJson() {
+            return body;
+        }
+    }
+
+    private static class EndpointStats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong conditional = new AtomicLong();
+        final AtomicLong notModified = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong deadlineExceeded = new AtomicLong();
+        final AtomicLong quotaExceeded = new AtomicLong();
+        final AtomicLong quotaExhausted = new AtomicLong();
+
+        ObjectNode toJson() {
+            ObjectNode json = JsonNodeFactory.instance.objectNode();
+            json.put("requests", requests.get());
+            json.put("conditional", conditional.get());
+            json.put("notModified", notModified.get());
+            json.put("retries", retries.get());
+            json.put("deadlineExceeded", deadlineExceeded.get());
+            json.put("quotaExceeded", quotaExceeded.get());
+            json.put("quotaExhausted", quotaExhausted.get());
+            return json;
+        }
+    }
+}
@@ -91,6 +91,17 @@ socket.onmessage = (event) => {
 	const data = JSON.parse(event.data);
 	console.log("Received data:", data);
 
+	if (data.throttled) {
+		// The search was not started: the user started too many new queries
+		$("#throttled").remove();
+		$("#results").before(
+			$("<p id=\"throttled\">").text(
+				`Too many new searches. "${data.throttled.query}" can be searched again in ${data.throttled.retryAfterSeconds}s.`
+			)
+		);
+		return;
+	}
+	$("#throttled").remove();
 	$("#results").empty()
 
 	for (let i = 0; i < data.responses.length; i++) {
@@ -155,6 +166,8 @@ function displayResults(data) {
 	// Add search header and stats
 	$("#results").append(`
         <h2>Search term: ${data.query}</h2>
+        ${data.stale ? `<i>Refreshing, showing results from ${Math.round(data.ageSeconds / 60)} min ago</i><br>` : ""}
+        ${data.degradedCount ? `<i>${data.degradedCount} of the videos could not be analysed</i><br>` : ""}
         <b>Word Stats:</b><a id="moreStats" href="/wordstats/${data.query}" target="_blank">More Stats</a><br>
         <body>
             <b>Sentiment:</b> ${data.sentiment || "N/A"}<br>
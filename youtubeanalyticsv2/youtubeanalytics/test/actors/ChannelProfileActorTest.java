@@ -4,14 +4,19 @@ import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.actor.Status;
 import akka.testkit.javadsl.TestKit;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.ConfigFactory;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import services.ChannelProfileService;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertEquals;
@@ -62,4 +67,131 @@ public class ChannelProfileActorTest {
 
         verify(channelProfileService, times(1)).fetchChannelDetails("UC123456");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCachedProfileIsServedWithoutFetching() {
+        TestKit testKit = new TestKit(actorSystem);
+        ChannelProfileService channelProfileService = mock(ChannelProfileService.class);
+        ActorRef channelProfileActor = actorSystem.actorOf(ChannelProfileActor.props(channelProfileService));
+
+        JsonNode channelDetails = new ObjectMapper().createObjectNode().put("channelName", "Cached Channel");
+        when(channelProfileService.fetchChannelDetails("UCcached"))
+                .thenReturn(CompletableFuture.completedFuture(channelDetails));
+        when(channelProfileService.fetchLatestVideos("UCcached"))
+                .thenReturn(CompletableFuture.completedFuture(new ObjectMapper().createArrayNode()));
+
+        channelProfileActor.tell(new ChannelProfileActor.InitChannelProfileService("UCcached"), testKit.getRef());
+        testKit.expectMsgClass(JsonNode.class);
+        channelProfileActor.tell(new ChannelProfileActor.InitChannelProfileService("UCcached"), testKit.getRef());
+        JsonNode cached = testKit.expectMsgClass(JsonNode.class);
+
+        assertEquals(channelDetails, cached.get("channelDetails"));
+        verify(channelProfileService, times(1)).fetchChannelDetails("UCcached");
+
+        channelProfileActor.tell(new ChannelProfileActor.GetMetrics(), testKit.getRef());
+        JsonNode metrics = testKit.expectMsgClass(JsonNode.class);
+        assertEquals(1, metrics.get("hits").asLong());
+        assertEquals(1, metrics.get("misses").asLong());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() {
+        TestKit first = new TestKit(actorSystem);
+        TestKit second = new TestKit(actorSystem);
+        ChannelProfileService channelProfileService = mock(ChannelProfileService.class);
+        ActorRef channelProfileActor = actorSystem.actorOf(ChannelProfileActor.props(channelProfileService));
+
+        CompletableFuture<JsonNode> channelDetails = new CompletableFuture<>();
+        when(channelProfileService.fetchChannelDetails("UCslow")).thenReturn(channelDetails);
+        when(channelProfileService.fetchLatestVideos("UCslow"))
+                .thenReturn(CompletableFuture.completedFuture(new ObjectMapper().createArrayNode()));
+
+        channelProfileActor.tell(new ChannelProfileActor.InitChannelProfileService("UCslow"), first.getRef());
+        channelProfileActor.tell(new ChannelProfileActor.InitChannelProfileService("UCslow"), second.getRef());
+        // Round trip through the actor so both requests are queued before the fetch completes
+        channelProfileActor.tell(new ChannelProfileActor.GetMetrics(), first.getRef());
+        assertEquals(1, first.expectMsgClass(JsonNode.class).get("coalesced").asLong());
+
+        channelDetails.complete(new ObjectMapper().createObjectNode().put("channelName", "Slow Channel"));
+
+        first.expectMsgClass(JsonNode.class);
+        second.expectMsgClass(JsonNode.class);
+        verify(channelProfileService, times(1)).fetchChannelDetails("UCslow");
+    }
+
+    @Test
+    public void testLatestVideosWaitForChannelDetailsOfColdChannel() {
+        TestKit testKit = new TestKit(actorSystem);
+        ChannelProfileService channelProfileService = mock(ChannelProfileService.class);
+        ActorRef channelProfileActor = actorSystem.actorOf(ChannelProfileActor.props(channelProfileService));
+
+        CompletableFuture<JsonNode> channelDetails = new CompletableFuture<>();
+        when(channelProfileService.fetchChannelDetails("UCcold")).thenReturn(channelDetails);
+        when(channelProfileService.fetchLatestVideos("UCcold"))
+                .thenReturn(CompletableFuture.completedFuture(new ObjectMapper().createArrayNode()));
+
+        channelProfileActor.tell(new ChannelProfileActor.InitChannelProfileService("UCcold"), testKit.getRef());
+        channelProfileActor.tell(new ChannelProfileActor.GetMetrics(), testKit.getRef());
+        testKit.expectMsgClass(JsonNode.class);
+        // The uploads playlist id comes with the channel details
+        verify(channelProfileService, never()).fetchLatestVideos("UCcold");
+
+        channelDetails.complete(new ObjectMapper().createObjectNode().put("channelName", "Cold Channel"));
+
+        testKit.expectMsgClass(JsonNode.class);
+        verify(channelProfileService, times(1)).fetchLatestVideos("UCcold");
+    }
+
+    @Test
+    public void testFailureIsRepliedToEveryWaiter() {
+        TestKit testKit = new TestKit(actorSystem);
+        ChannelProfileService channelProfileService = mock(ChannelProfileService.class);
+        ActorRef channelProfileActor = actorSystem.actorOf(ChannelProfileActor.props(channelProfileService));
+
+        CompletableFuture<JsonNode> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("quotaExceeded"));
+        when(channelProfileService.fetchChannelDetails("UCfail")).thenReturn(failed);
+        when(channelProfileService.fetchLatestVideos("UCfail"))
+                .thenReturn(CompletableFuture.completedFuture(new ObjectMapper().createArrayNode()));
+
+        channelProfileActor.tell(new ChannelProfileActor.InitChannelProfileService("UCfail"), testKit.getRef());
+
+        testKit.expectMsgClass(Status.Failure.class);
+    }
+
+    @Test
+    public void testChannelsFromSearchResultsArePrefetched() {
+        ActorSystem prefetchSystem = ActorSystem.create("prefetch", ConfigFactory.parseString(
+                "youtube.channel-profile.prefetch { interval = 100ms, calls-per-interval = 10 }"));
+        try {
+            TestKit testKit = new TestKit(prefetchSystem);
+            ChannelProfileService channelProfileService = mock(ChannelProfileService.class);
+            ActorRef channelProfileActor = prefetchSystem.actorOf(ChannelProfileActor.props(channelProfileService));
+
+            Map<String, JsonNode> channels = new HashMap<>();
+            channels.put("UCa", new ObjectMapper().createObjectNode().put("channelName", "A"));
+            channels.put("UCb", new ObjectMapper().createObjectNode().put("channelName", "B"));
+            when(channelProfileService.fetchChannelDetailsBatch(Arrays.asList("UCa", "UCb")))
+                    .thenReturn(CompletableFuture.completedFuture(channels));
+            when(channelProfileService.fetchLatestVideos(anyString()))
+                    .thenReturn(CompletableFuture.completedFuture(new ObjectMapper().createArrayNode()));
+
+            channelProfileActor.tell(new ChannelProfileActor.PrefetchChannels(Arrays.asList("UCa", "UCb")), testKit.getRef());
+
+            testKit.awaitAssert(java.time.Duration.ofSeconds(3), () -> {
+                channelProfileActor.tell(new ChannelProfileActor.GetMetrics(), testKit.getRef());
+                assertEquals(2, testKit.expectMsgClass(JsonNode.class).get("prefetch").get("prefetched").asLong());
+                return null;
+            });
+
+            channelProfileActor.tell(new ChannelProfileActor.InitChannelProfileService("UCa"), testKit.getRef());
+            JsonNode profile = testKit.expectMsgClass(JsonNode.class);
+
+            assertEquals("A", profile.get("channelDetails").get("channelName").asText());
+            verify(channelProfileService, never()).fetchChannelDetails(anyString());
+            verify(channelProfileService, times(1)).fetchChannelDetailsBatch(anyList());
+        } finally {
+            TestKit.shutdownActorSystem(prefetchSystem);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.ConfigFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.AfterClass;
@@ -19,8 +20,10 @@ import play.libs.ws.WSClient;
 import play.libs.ws.WSRequest;
 import play.libs.ws.WSResponse;
 import scala.concurrent.duration.Duration;
+import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.*;
 import services.ReadabilityCalculator;
+import services.YoutubeApiClient;
 
 
 import java.util.Collections;
@@ -33,6 +36,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -92,7 +96,7 @@ public class SearchActorTest {
 
                                 // Create the SearchActor
                                 ActorRef searchActor = system.actorOf(SearchActor.props(
-                                                mockWsClient,
+                                                new YoutubeApiClient(mockWsClient, Collections.singletonList("test-key")),
                                                 "test query",
                                                 mockCache,
                                                 mockReadabilityCalculatorActor,
@@ -168,7 +172,7 @@ public class SearchActorTest {
                                 // Prepare Props with test probe actors
 
                                 ActorRef searchActor = system.actorOf(SearchActor.props(
-                                                mockWsClient,
+                                                new YoutubeApiClient(mockWsClient, Collections.singletonList("test-key")),
                                                 "test query",
                                                 mockCache,
                                                 readabilityProbe.getRef(),
@@ -214,4 +218,256 @@ public class SearchActorTest {
                 };
         }
 
-}
\ No newline at end of file
+        /**
+         * Tests that a video whose details cannot be fetched is published unenriched,
+         * without failing the round.
+         * @author Vatsal Dadia
+         */
+        @Test
+        public void testVideoWithoutDetailsIsPublishedDegraded() {
+                new TestKit(system) {
+                        {
+                                TestKit readabilityProbe = new TestKit(system);
+                                TestKit sentimentProbe = new TestKit(system);
+                                TestKit wordStatProbe = new TestKit(system);
+                                TestKit channelProfileProbe = new TestKit(system);
+
+                                ObjectNode searchResponseNode = Json.newObject();
+                                ObjectNode searchItem = searchResponseNode.putArray("items").addObject();
+                                searchItem.putObject("id").put("videoId", "deleted-video-id");
+                                searchItem.putObject("snippet").put("channelId", "test-channel-id");
+                                ObjectNode noDetails = Json.newObject();
+                                noDetails.putArray("items");
+
+                                when(mockWsClient.url(anyString())).thenReturn(mockWSRequest);
+                                when(mockWSRequest.addQueryParameter(anyString(), anyString()))
+                                                .thenReturn(mockWSRequest);
+                                when(mockWSRequest.get()).thenReturn(CompletableFuture.completedFuture(mockWSResponse));
+                                when(mockWSResponse.asJson()).thenReturn(searchResponseNode).thenReturn(noDetails);
+
+                                ActorRef searchActor = system.actorOf(SearchActor.props(
+                                                new YoutubeApiClient(mockWsClient, Collections.singletonList("test-key")),
+                                                "degraded query",
+                                                mockCache,
+                                                readabilityProbe.getRef(),
+                                                sentimentProbe.getRef(),
+                                                wordStatProbe.getRef(),
+                                                channelProfileProbe.getRef()));
+
+                                TestKit probe = new TestKit(system);
+                                searchActor.tell(new SearchActor.RegisterMsg("degraded query"), probe.getRef());
+
+                                sentimentProbe.expectMsgClass(
+                                                Duration.create(20, TimeUnit.SECONDS),
+                                                SentimentAnalysisActor.initSentimentAnalyzerService.class);
+                                sentimentProbe.reply(
+                                                new SentimentAnalysisActor.SentimentAnalysisResults("degraded query", ":-|"));
+
+                                SearchActor.SearchResponse response =
+                                                probe.expectMsgClass(SearchActor.SearchResponse.class);
+                                assertEquals(1, response.response.get("degradedCount").asInt());
+                                assertFalse(response.response.get("items").get(0).get("enriched").asBoolean());
+                                readabilityProbe.expectNoMessage();
+                        }
+                };
+        }
+
+        /**
+         * Tests that a subscriber joining after a round completed is served from the last
+         * response without starting another search.
+         * @author Mohnish Mirchandani
+         */
+        @Test
+        public void testLateJoinerIsServedFromLastResponse() {
+                new TestKit(system) {
+                        {
+                                TestKit readabilityProbe = new TestKit(system);
+                                TestKit sentimentProbe = new TestKit(system);
+                                TestKit wordStatProbe = new TestKit(system);
+                                TestKit channelProfileProbe = new TestKit(system);
+
+                                ObjectNode searchResponseNode = Json.newObject();
+                                ObjectNode searchItem = searchResponseNode.putArray("items").addObject();
+                                searchItem.putObject("id").put("videoId", "popular-video-id");
+                                searchItem.putObject("snippet").put("channelId", "test-channel-id");
+                                ObjectNode noDetails = Json.newObject();
+                                noDetails.putArray("items");
+
+                                when(mockWsClient.url(anyString())).thenReturn(mockWSRequest);
+                                when(mockWSRequest.addQueryParameter(anyString(), anyString()))
+                                                .thenReturn(mockWSRequest);
+                                when(mockWSRequest.get()).thenReturn(CompletableFuture.completedFuture(mockWSResponse));
+                                when(mockWSResponse.asJson()).thenReturn(searchResponseNode).thenReturn(noDetails);
+
+                                ActorRef searchActor = system.actorOf(SearchActor.props(
+                                                new YoutubeApiClient(mockWsClient, Collections.singletonList("test-key")),
+                                                "popular query",
+                                                mockCache,
+                                                readabilityProbe.getRef(),
+                                                sentimentProbe.getRef(),
+                                                wordStatProbe.getRef(),
+                                                channelProfileProbe.getRef()));
+
+                                TestKit first = new TestKit(system);
+                                searchActor.tell(new SearchActor.RegisterMsg("popular query"), first.getRef());
+                                sentimentProbe.expectMsgClass(
+                                                Duration.create(20, TimeUnit.SECONDS),
+                                                SentimentAnalysisActor.initSentimentAnalyzerService.class);
+                                sentimentProbe.reply(
+                                                new SentimentAnalysisActor.SentimentAnalysisResults("popular query", ":-|"));
+                                first.expectMsgClass(SearchActor.SearchResponse.class);
+
+                                TestKit lateJoiner = new TestKit(system);
+                                searchActor.tell(new SearchActor.RegisterMsg("popular query"), lateJoiner.getRef());
+
+                                SearchActor.SearchResponse response =
+                                                lateJoiner.expectMsgClass(SearchActor.SearchResponse.class);
+                                assertFalse(response.response.get("stale").asBoolean());
+                                sentimentProbe.expectNoMessage();
+                                // One /search and one /videos call, both from the first round
+                                verify(mockWSRequest, times(2)).get();
+                        }
+                };
+        }
+
+        /**
+         * Tests that ticks arriving while a round is fetching do not start overlapping rounds,
+         * and are coalesced into a single follow-up round.
+         * @author Vatsal Dadia
+         */
+        @Test
+        public void testTicksDuringRoundAreCoalesced() {
+                new TestKit(system) {
+                        {
+                                TestKit readabilityProbe = new TestKit(system);
+                                TestKit sentimentProbe = new TestKit(system);
+                                TestKit wordStatProbe = new TestKit(system);
+                                TestKit channelProfileProbe = new TestKit(system);
+
+                                ObjectNode searchResponseNode = Json.newObject();
+                                ObjectNode searchItem = searchResponseNode.putArray("items").addObject();
+                                searchItem.putObject("id").put("videoId", "slow-video-id");
+                                searchItem.putObject("snippet").put("channelId", "test-channel-id");
+                                ObjectNode noDetails = Json.newObject();
+                                noDetails.putArray("items");
+                                CompletableFuture<WSResponse> slowSearch = new CompletableFuture<>();
+
+                                when(mockWsClient.url(anyString())).thenReturn(mockWSRequest);
+                                when(mockWSRequest.addQueryParameter(anyString(), anyString()))
+                                                .thenReturn(mockWSRequest);
+                                when(mockWSRequest.get()).thenReturn(slowSearch)
+                                                .thenReturn(CompletableFuture.completedFuture(mockWSResponse));
+                                when(mockWSResponse.asJson()).thenReturn(searchResponseNode, noDetails,
+                                                searchResponseNode, noDetails);
+
+                                ActorRef searchActor = system.actorOf(SearchActor.props(
+                                                new YoutubeApiClient(mockWsClient, Collections.singletonList("test-key")),
+                                                "slow query",
+                                                mockCache,
+                                                readabilityProbe.getRef(),
+                                                sentimentProbe.getRef(),
+                                                wordStatProbe.getRef(),
+                                                channelProfileProbe.getRef()));
+
+                                TestKit probe = new TestKit(system);
+                                searchActor.tell(new SearchActor.RegisterMsg("slow query"), probe.getRef());
+                                searchActor.tell(new SearchActor.Tick("slow query"), getRef());
+                                searchActor.tell(new SearchActor.Tick("slow query"), getRef());
+                                slowSearch.complete(mockWSResponse);
+
+                                for (int round = 0; round < 2; round++) {
+                                        sentimentProbe.expectMsgClass(
+                                                        Duration.create(20, TimeUnit.SECONDS),
+                                                        SentimentAnalysisActor.initSentimentAnalyzerService.class);
+                                        sentimentProbe.reply(
+                                                        new SentimentAnalysisActor.SentimentAnalysisResults("slow query", ":-|"));
+                                        probe.expectMsgClass(SearchActor.SearchResponse.class);
+                                }
+
+                                sentimentProbe.expectNoMessage();
+                                // Two rounds of one /search and one /videos call each
+                                verify(mockWSRequest, times(4)).get();
+                        }
+                };
+        }
+
+        /**
+         * Tests that a persistent SearchActor recovers its last response and subscribers
+         * after being stopped, and republishes the response without a new search.
+         * @author Mohnish Mirchandani
+         */
+        @Test
+        public void testRecoversLastResponseAfterRestart() {
+                ActorSystem persistentSystem = ActorSystem.create(
+                                "persistentSearch",
+                                ConfigFactory.parseString(
+                                                "youtube.search.persistence.enabled = true\n"
+                                                                + "akka.persistence.journal.plugin = \"akka.persistence.journal.inmem\"\n"
+                                                                + "akka.persistence.snapshot-store.plugin = \"akka.persistence.no-snapshot-store\"")
+                                                .withFallback(ConfigFactory.load()));
+                try {
+                        new TestKit(persistentSystem) {
+                                {
+                                        TestKit readabilityProbe = new TestKit(persistentSystem);
+                                        TestKit sentimentProbe = new TestKit(persistentSystem);
+                                        TestKit wordStatProbe = new TestKit(persistentSystem);
+                                        TestKit channelProfileProbe = new TestKit(persistentSystem);
+
+                                        ObjectNode searchResponseNode = Json.newObject();
+                                        ObjectNode searchItem = searchResponseNode.putArray("items").addObject();
+                                        searchItem.putObject("id").put("videoId", "test-video-id");
+                                        searchItem.putObject("snippet").put("channelId", "test-channel-id");
+
+                                        ObjectNode videoResponseNode = Json.newObject();
+                                        videoResponseNode.putArray("items").addObject()
+                                                        .putObject("snippet").put("description", "Test video description");
+
+                                        when(mockWsClient.url(anyString())).thenReturn(mockWSRequest);
+                                        when(mockWSRequest.addQueryParameter(anyString(), anyString()))
+                                                        .thenReturn(mockWSRequest);
+                                        when(mockWSRequest.get()).thenReturn(CompletableFuture.completedFuture(mockWSResponse));
+                                        when(mockWSResponse.asJson()).thenReturn(searchResponseNode)
+                                                        .thenReturn(videoResponseNode);
+
+                                        Props props = SearchActor.props(
+                                                        new YoutubeApiClient(mockWsClient, Collections.singletonList("test-key")),
+                                                        "persistent query",
+                                                        mockCache,
+                                                        readabilityProbe.getRef(),
+                                                        sentimentProbe.getRef(),
+                                                        wordStatProbe.getRef(),
+                                                        channelProfileProbe.getRef());
+                                        ActorRef searchActor = persistentSystem.actorOf(props);
+
+                                        TestKit probe = new TestKit(persistentSystem);
+                                        searchActor.tell(new SearchActor.RegisterMsg("persistent query"), probe.getRef());
+
+                                        readabilityProbe.expectMsgClass(
+                                                        Duration.create(20, TimeUnit.SECONDS),
+                                                        ReadabilityCalculator.initReadabilityCalculatorService.class);
+                                        readabilityProbe.reply(
+                                                        new ReadabilityCalculator.ReadabilityResults("test-video-id", 8.5, 60.0));
+                                        sentimentProbe.expectMsgClass(
+                                                        SentimentAnalysisActor.initSentimentAnalyzerService.class);
+                                        sentimentProbe.reply(
+                                                        new SentimentAnalysisActor.SentimentAnalysisResults("persistent query", ":-)"));
+                                        probe.expectMsgClass(SearchActor.SearchResponse.class);
+
+                                        watch(searchActor);
+                                        persistentSystem.stop(searchActor);
+                                        expectTerminated(searchActor);
+
+                                        persistentSystem.actorOf(props);
+
+                                        SearchActor.SearchResponse recovered =
+                                                        probe.expectMsgClass(SearchActor.SearchResponse.class);
+                                        assert (recovered.response.get("sentiment").asText().equals(":-)"));
+                                        readabilityProbe.expectNoMessage();
+                                }
+                        };
+                } finally {
+                        TestKit.shutdownActorSystem(persistentSystem);
+                }
+        }
+
+}
@@ -142,9 +142,11 @@ import static org.junit.Assert.*;
 
 import scala.concurrent.duration.Duration;
 import services.ReadabilityCalculator;
+import services.YoutubeApiClient;
 
 import static org.mockito.Mockito.mock;
 
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 public class SupervisorActorTest {
@@ -186,9 +188,9 @@ public class SupervisorActorTest {
             ActorRef sentimentAnalysisActor = system.actorOf(SentimentAnalysisActor.props(), "sentimentAnalysisActor");
             ActorRef wordStatsActor = system.actorOf(WordStatsActor.props(), "wordStatsActor");
             ActorRef readabilityCalculatorActor = system.actorOf(ReadabilityCalculator.props(), "readabilityCalculatorActor");
-            ActorRef channelProfileActor = system.actorOf(ChannelProfileActor.props(new ChannelProfileService(mockWsClient)), "channelProfileActor");
+            ActorRef channelProfileActor = system.actorOf(ChannelProfileActor.props(new ChannelProfileService(mockWsClient, Collections.singletonList("test-key"))), "channelProfileActor");
             
-            ActorRef searchActor = system.actorOf(SearchActor.props(mockWsClient, "test query", mockCache, readabilityCalculatorActor, sentimentAnalysisActor, wordStatsActor, channelProfileActor), "searchActor");
+            ActorRef searchActor = system.actorOf(SearchActor.props(new YoutubeApiClient(mockWsClient, Collections.singletonList("test-key")), "test query", mockCache, readabilityCalculatorActor, sentimentAnalysisActor, wordStatsActor, channelProfileActor), "searchActor");
 
              // Create a TestProbe to watch the actors
             TestKit probe = new TestKit(system);
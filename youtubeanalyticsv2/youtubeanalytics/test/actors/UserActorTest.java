@@ -1,6 +1,9 @@
 package actors;
 
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import akka.actor.ActorRef;
@@ -61,6 +64,9 @@ public class UserActorTest {
 				TestKit searchActorProbe = new TestKit(system);
 
 				// Mock the YoutubeController to return our search actor probe
+				when(youtubeController.canonicalQuery(anyString())).thenAnswer(
+					invocation -> invocation.getArgument(0)
+				);
 				when(youtubeController.getSearchActor(anyString())).thenReturn(
 					searchActorProbe.getRef()
 				);
@@ -121,6 +127,9 @@ public class UserActorTest {
 				TestKit wsOutProbe = new TestKit(system);
 				TestKit searchActorProbe = new TestKit(system);
 
+				when(youtubeController.canonicalQuery(anyString())).thenAnswer(
+					invocation -> invocation.getArgument(0)
+				);
 				when(youtubeController.getSearchActor(anyString())).thenReturn(
 					searchActorProbe.getRef()
 				);
@@ -165,6 +174,51 @@ public class UserActorTest {
 		};
 	}
 
+	/**
+	 * Tests that a throttled new query is not started and the user is told when to retry,
+	 * while a query from the history is not rate limited.
+	 * @author Vatsal Dadia
+	 */
+	@Test
+	public void testThrottledNewQuery() {
+		new TestKit(system) {
+			{
+				TestKit wsOutProbe = new TestKit(system);
+				TestKit searchActorProbe = new TestKit(system);
+
+				when(youtubeController.canonicalQuery(anyString())).thenAnswer(
+					invocation -> invocation.getArgument(0)
+				);
+				when(youtubeController.getSearchActor(anyString())).thenReturn(
+					searchActorProbe.getRef()
+				);
+				when(youtubeController.acquireNewQuery(anyString())).thenReturn(0L, 4500L);
+
+				ActorRef userActor = system.actorOf(
+					UserActor.props(wsOutProbe.getRef(), youtubeController)
+				);
+
+				String[] queries = { "query1", "query2", "query1" };
+				for (String query : queries) {
+					ObjectNode searchMessage = Json.newObject();
+					searchMessage.put("action", "search");
+					searchMessage.put("query", query);
+					userActor.tell(searchMessage, getRef());
+				}
+
+				searchActorProbe.expectMsgClass(SearchActor.RegisterMsg.class);
+				ObjectNode throttled = wsOutProbe.expectMsgClass(ObjectNode.class);
+				assert (throttled.get("throttled").get("query").asText().equals("query2"));
+				assert (throttled.get("throttled").get("retryAfterSeconds").asLong() == 5);
+				SearchActor.RegisterMsg repeated =
+					searchActorProbe.expectMsgClass(SearchActor.RegisterMsg.class);
+				assert (repeated.getQuery().equals("query1"));
+				verify(youtubeController, times(2)).acquireNewQuery(anyString());
+				verify(youtubeController, never()).getSearchActor("query2");
+			}
+		};
+	}
+
 	/**
 	 * Tests the UserActor's handling of invalid messages.
 	 * @author Mohnish Mirchandani
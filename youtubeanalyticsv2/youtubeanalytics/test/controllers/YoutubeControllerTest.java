@@ -83,6 +83,17 @@ public class YoutubeControllerTest extends WithApplication {
         assertEquals(searchActor, youtubeController.getSearchActor(query));
     }
 
+    /**
+     * Tests that equivalent spellings of a query share one SearchActor.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testEquivalentQueriesShareSearchActor() {
+        String canonical = youtubeController.canonicalQuery("  Java   Streams");
+        assertEquals("java streams", canonical);
+        assertEquals(youtubeController.getSearchActor(canonical), youtubeController.getSearchActor("JAVA streams"));
+    }
+
     /**
      * Tests the creation of search actors in the YoutubeController.
      * @author Mohnish Mirchandani
@@ -145,10 +156,10 @@ public class YoutubeControllerTest extends WithApplication {
         String query = "testQuery";
         ObjectMapper mapper = new ObjectMapper();
         JsonNode wordStats = mapper.createObjectNode().put("word", 1);
-        WordStatsActor.wordStatsMap.put(query, wordStats);
+        WordStatsActor.wordStatsMap.put(query, new WordStatsActor.StoredWordStats(wordStats, System.currentTimeMillis()));
 
         // Call the method
-        Result result = youtubeController.getWordStats(query);
+        Result result = youtubeController.getWordStats(Helpers.fakeRequest().build(), query);
 
         // Verify the result
         assertEquals(200, result.status());
@@ -157,4 +168,43 @@ public class YoutubeControllerTest extends WithApplication {
         assertEquals("text/html", result.contentType().get());
         assertTrue(contentAsString(result).contains("testQuery"));
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that a conditional request for unchanged word statistics is answered with 304.
+     * @author Rolwyn Raju
+     */
+    @Test
+    public void testGetWordStatsNotModified() {
+        String query = "unchangedQuery";
+        WordStatsActor.wordStatsMap.put(query, new WordStatsActor.StoredWordStats(
+                new ObjectMapper().createObjectNode().put("word", 1), System.currentTimeMillis()));
+
+        Result first = youtubeController.getWordStats(Helpers.fakeRequest().build(), query);
+        String etag = first.header(Http.HeaderNames.ETAG).orElseThrow();
+        Result second = youtubeController.getWordStats(
+                Helpers.fakeRequest().header(Http.HeaderNames.IF_NONE_MATCH, etag).build(), query);
+
+        assertEquals(304, second.status());
+        assertEquals(etag, second.header(Http.HeaderNames.ETAG).orElse(null));
+    }
+
+    /**
+     * Tests that word statistics carry the time they were computed as Last-Modified, and
+     * that a request sent with that date is answered with 304.
+     * @author Rolwyn Raju
+     */
+    @Test
+    public void testGetWordStatsLastModified() {
+        String query = "datedQuery";
+        WordStatsActor.wordStatsMap.put(query, new WordStatsActor.StoredWordStats(
+                new ObjectMapper().createObjectNode().put("word", 1), System.currentTimeMillis() - 60_000));
+
+        Result first = youtubeController.getWordStats(Helpers.fakeRequest().build(), query);
+        String lastModified = first.header(Http.HeaderNames.LAST_MODIFIED).orElseThrow();
+        Result second = youtubeController.getWordStats(
+                Helpers.fakeRequest().header(Http.HeaderNames.IF_MODIFIED_SINCE, lastModified).build(), query);
+
+        assertEquals(200, first.status());
+        assertEquals(304, second.status());
+    }
+}
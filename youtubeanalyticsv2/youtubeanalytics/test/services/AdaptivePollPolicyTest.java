@@ -0,0 +1,123 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import org.junit.Test;
+
+/**
+ * Test class for AdaptivePollPolicy.
+ * This class contains unit tests for the poll intervals chosen from the rate of new videos, the audience and the quota pacing.
+ *
+ * @author Vatsal Dadia
+ */
+public class AdaptivePollPolicyTest {
+
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+    private static final Config CONFIG = ConfigFactory.parseString(
+            "youtube.search.poll { initial-interval = 2m, min-interval = 1m, max-interval = 30m }");
+
+    private static QuotaTracker quota() {
+        Instant noon = ZonedDateTime.of(2024, 3, 1, 12, 0, 0, 0, ZoneId.of("America/Los_Angeles")).toInstant();
+        return new QuotaTracker(10000, Clock.fixed(noon, ZoneOffset.UTC));
+    }
+
+    /**
+     * Tests that a query without a measured rate of new videos is polled at the initial interval.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testUnmeasuredQueryUsesInitialInterval() {
+        AdaptivePollPolicy policy = new AdaptivePollPolicy(CONFIG, quota());
+        policy.recordRound("cats", 10, 0);
+
+        assertEquals(Duration.ofMinutes(2), policy.nextInterval("cats", 1));
+    }
+
+    /**
+     * Tests that the interval shortens with the rate of new videos and that a quiet query
+     * is polled at the maximum interval.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testIntervalFollowsRateOfNewVideos() {
+        AdaptivePollPolicy policy = new AdaptivePollPolicy(CONFIG, quota());
+        policy.recordRound("cats", 0, HOUR);
+        policy.recordRound("cats", 3, 2 * HOUR);
+
+        // Three new videos per hour are polled six times per hour
+        assertEquals(Duration.ofMinutes(10), policy.nextInterval("cats", 1));
+
+        policy.recordRound("quiet", 0, HOUR);
+        policy.recordRound("quiet", 0, 2 * HOUR);
+        assertEquals(Duration.ofMinutes(30), policy.nextInterval("quiet", 1));
+    }
+
+    /**
+     * Tests that a query watched by more subscribers is polled more often.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testLargerAudienceShortensInterval() {
+        AdaptivePollPolicy policy = new AdaptivePollPolicy(CONFIG, quota());
+        policy.recordRound("cats", 0, HOUR);
+        policy.recordRound("cats", 1, 2 * HOUR);
+
+        assertEquals(Duration.ofMinutes(30), policy.nextInterval("cats", 1));
+        assertEquals(Duration.ofMinutes(10), policy.nextInterval("cats", 4));
+    }
+
+    /**
+     * Tests that spending the daily quota faster than the day goes by stretches the interval,
+     * up to the maximum interval.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testQuotaSpentAheadOfScheduleLengthensInterval() {
+        QuotaTracker quota = quota();
+        AdaptivePollPolicy policy = new AdaptivePollPolicy(CONFIG, quota);
+        policy.recordRound("cats", 0, HOUR);
+        policy.recordRound("cats", 3, 2 * HOUR);
+        // Three quarters of the quota spent by noon is spending at one and a half times the pace
+        for (int i = 0; i < 75; i++) {
+            quota.spend("/search");
+        }
+
+        assertEquals(Duration.ofMinutes(15), policy.nextInterval("cats", 1));
+        for (int i = 0; i < 25; i++) {
+            quota.spend("/search");
+        }
+        assertEquals(Duration.ofMinutes(30), policy.nextInterval("cats", 1));
+    }
+
+    /**
+     * Tests that the statistics report the interval and audience of every query and forget
+     * removed queries.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testStatsReportIntervalPerQuery() {
+        AdaptivePollPolicy policy = new AdaptivePollPolicy(CONFIG, quota());
+        policy.nextInterval("cats", 1);
+
+        ObjectNode stats = policy.stats();
+        assertEquals(120, stats.get("cats").get("intervalSeconds").asLong());
+        assertEquals(1, stats.get("cats").get("subscribers").asInt());
+
+        policy.remove("cats");
+        assertFalse(policy.stats().has("cats"));
+    }
+}
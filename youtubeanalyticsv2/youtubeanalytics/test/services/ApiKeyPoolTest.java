@@ -0,0 +1,131 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Test class for ApiKeyPool.
+ * This class contains unit tests for the rotation, quarantine and configuration of YouTube Data API keys.
+ *
+ * @author Vatsal Dadia
+ */
+public class ApiKeyPoolTest {
+
+    private static Clock noon() {
+        Instant instant = ZonedDateTime.of(2024, 3, 1, 12, 0, 0, 0, ZoneId.of("America/Los_Angeles")).toInstant();
+        return Clock.fixed(instant, ZoneOffset.UTC);
+    }
+
+    /**
+     * Tests that keys are picked in proportion to the quota they have left.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testRotationIsWeightedByRemainingQuota() {
+        ApiKeyPool pool = new ApiKeyPool(Arrays.asList("key-aaaa", "key-bbbb"), 1000, noon());
+        ApiKeyPool.ApiKey first = pool.acquire();
+        for (int i = 0; i < 9; i++) {
+            first.spend("/search");
+        }
+
+        Map<String, Integer> picks = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            picks.merge(pool.acquire().value, 1, Integer::sum);
+        }
+
+        // 100 units left against 1000: about one pick in eleven
+        assertTrue(picks.getOrDefault(first.value, 0) < 200);
+        assertEquals(1000, picks.values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * Tests that a quarantined key is never picked and that no key is handed out once all
+     * of them are quarantined.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testQuarantinedKeyIsSkippedUntilReset() {
+        ApiKeyPool pool = new ApiKeyPool(Arrays.asList("key-aaaa", "key-bbbb"), 1000, noon());
+        ApiKeyPool.ApiKey quarantined = pool.acquire();
+        quarantined.quarantine();
+
+        for (int i = 0; i < 100; i++) {
+            assertNotSame(quarantined, pool.acquire());
+        }
+        pool.acquire().quarantine();
+        assertNull(pool.acquire());
+
+        JsonNode stats = pool.stats().get("...aaaa");
+        assertTrue(stats.get("quarantined").asBoolean());
+        assertEquals(1, stats.get("quarantines").asLong());
+    }
+
+    /**
+     * Tests that the pool cannot be created without a youtube.api.keys setting.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test(expected = ConfigException.Missing.class)
+    public void testMissingKeysFailAtStartup() {
+        new ApiKeyPool(ConfigFactory.empty());
+    }
+
+    /**
+     * Tests that the pool cannot be created from an empty list of keys.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test(expected = ConfigException.BadValue.class)
+    public void testEmptyKeysFailAtStartup() {
+        new ApiKeyPool(ConfigFactory.parseString("youtube.api.keys = []"));
+    }
+
+    /**
+     * Tests that the keys can be given as a comma-separated string, as the YOUTUBE_API_KEYS
+     * environment variable sets them.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testKeysFromCommaSeparatedString() {
+        ApiKeyPool pool = new ApiKeyPool(
+                ConfigFactory.parseString("youtube.api.keys = \" key-aaaa, key-bbbb ,\""));
+
+        assertEquals(2, pool.size());
+    }
+
+    /**
+     * Tests that only a 403 response with the quotaExceeded reason counts as an exhausted key.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testRecognisesQuotaExceededResponses() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode quotaExceeded = mapper.readTree(
+                "{\"error\":{\"code\":403,\"errors\":[{\"reason\":\"quotaExceeded\"}]}}");
+        JsonNode forbidden = mapper.readTree(
+                "{\"error\":{\"code\":403,\"errors\":[{\"reason\":\"forbidden\"}]}}");
+
+        assertTrue(ApiKeyPool.isQuotaExceeded(403, quotaExceeded));
+        assertFalse(ApiKeyPool.isQuotaExceeded(403, forbidden));
+        assertFalse(ApiKeyPool.isQuotaExceeded(400, quotaExceeded));
+        assertFalse(ApiKeyPool.isQuotaExceeded(403, null));
+    }
+}
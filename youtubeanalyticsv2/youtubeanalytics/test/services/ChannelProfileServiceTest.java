@@ -11,6 +11,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -39,7 +40,7 @@ public class ChannelProfileServiceTest {
     public void setup() {
         MockitoAnnotations.openMocks(this);
         objectMapper = new ObjectMapper();
-        service = new ChannelProfileService(wsClient);
+        service = new ChannelProfileService(wsClient, Collections.singletonList("test-key"));
     }
 
     @Test
@@ -85,7 +86,7 @@ public class ChannelProfileServiceTest {
         // Verify interactions
         verify(wsClient).url(contains("/youtube/v3/channels"));
         verify(wsRequest).addQueryParameter(eq("id"), eq(channelId));
-        verify(wsRequest).addQueryParameter(eq("part"), eq("snippet,statistics"));
+        verify(wsRequest).addQueryParameter(eq("part"), eq("snippet,statistics,contentDetails"));
         verify(wsRequest).addQueryParameter(eq("key"), anyString());
         verify(wsRequest).get();
         verify(wsResponse).asJson();
@@ -115,7 +116,7 @@ public class ChannelProfileServiceTest {
         // Verify interactions
         verify(wsClient).url(contains("/youtube/v3/channels"));
         verify(wsRequest).addQueryParameter(eq("id"), eq(channelId));
-        verify(wsRequest).addQueryParameter(eq("part"), eq("snippet,statistics"));
+        verify(wsRequest).addQueryParameter(eq("part"), eq("snippet,statistics,contentDetails"));
         verify(wsRequest).addQueryParameter(eq("key"), anyString());
         verify(wsRequest).get();
         verify(wsResponse).asJson();
@@ -136,7 +137,7 @@ public class ChannelProfileServiceTest {
         // Verify interactions
         verify(wsClient).url(contains("/youtube/v3/channels"));
         verify(wsRequest).addQueryParameter(eq("id"), eq(channelId));
-        verify(wsRequest).addQueryParameter(eq("part"), eq("snippet,statistics"));
+        verify(wsRequest).addQueryParameter(eq("part"), eq("snippet,statistics,contentDetails"));
         verify(wsRequest).addQueryParameter(eq("key"), anyString());
         verify(wsRequest).get();
     }
@@ -208,4 +209,47 @@ public class ChannelProfileServiceTest {
         assertEquals("http://mock.com", video.get("thumbnailUrl").asText());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testFetchLatestVideos_UsesUploadsPlaylist() throws Exception {
+        String channelJson = "{\"items\": [{\"id\": \"channel123\","
+                + "\"contentDetails\": {\"relatedPlaylists\": {\"uploads\": \"UUchannel123\"}}}]}";
+        String firstPageJson = "{\"nextPageToken\": \"page2\", \"items\": [{\"id\": \"item1\", \"snippet\": {"
+                + "\"title\": \"First\", \"thumbnails\": {\"default\": {\"url\": \"http://mock.com/1\"}},"
+                + "\"resourceId\": {\"videoId\": \"video1\"}}},"
+                + "{\"id\": \"item2\", \"snippet\": {\"title\": \"Private video\", \"resourceId\": {\"videoId\": \"video2\"}}}]}";
+        String secondPageJson = "{\"items\": [{\"id\": \"item3\", \"snippet\": {"
+                + "\"title\": \"Third\", \"thumbnails\": {\"default\": {\"url\": \"http://mock.com/3\"}},"
+                + "\"resourceId\": {\"videoId\": \"video3\"}}}]}";
+
+        WSRequest playlistRequest = mock(WSRequest.class);
+        WSResponse firstPage = mock(WSResponse.class);
+        WSResponse secondPage = mock(WSResponse.class);
+
+        when(wsClient.url(contains("/youtube/v3/channels"))).thenReturn(wsRequest);
+        when(wsRequest.addQueryParameter(anyString(), anyString())).thenReturn(wsRequest);
+        when(wsRequest.get()).thenReturn(CompletableFuture.completedFuture(wsResponse));
+        when(wsResponse.asJson()).thenReturn(objectMapper.readTree(channelJson));
+
+        when(wsClient.url(contains("/youtube/v3/playlistItems"))).thenReturn(playlistRequest);
+        when(playlistRequest.addQueryParameter(anyString(), anyString())).thenReturn(playlistRequest);
+        when(playlistRequest.get()).thenReturn(
+                CompletableFuture.completedFuture(firstPage),
+                CompletableFuture.completedFuture(secondPage));
+        when(firstPage.asJson()).thenReturn(objectMapper.readTree(firstPageJson));
+        when(secondPage.asJson()).thenReturn(objectMapper.readTree(secondPageJson));
+
+        service.fetchChannelDetails("channel123").toCompletableFuture().get();
+        JsonNode latestVideos = service.fetchLatestVideos("channel123").toCompletableFuture().get();
+
+        ArrayNode videos = service.parseLatestVideos(latestVideos);
+        assertEquals(2, videos.size());
+        assertEquals("video1", videos.get(0).get("videoId").asText());
+        assertEquals("video3", videos.get(1).get("videoId").asText());
+
+        // The uploads playlist id came with the channel details, so /channels was called once
+        verify(wsClient, times(1)).url(contains("/youtube/v3/channels"));
+        verify(wsClient, never()).url(contains("/youtube/v3/search"));
+        verify(playlistRequest).addQueryParameter("playlistId", "UUchannel123");
+        verify(playlistRequest).addQueryParameter("pageToken", "page2");
+    }
+}
@@ -0,0 +1,83 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Test class for CircuitBreaker.
+ * This class contains unit tests for the per-endpoint circuit states and fallbacks.
+ *
+ * @author Vatsal Dadia
+ */
+public class CircuitBreakerTest {
+
+    private static CompletionStage<Integer> respond(CircuitBreaker breaker, int status) {
+        return breaker.execute("/search", () -> CompletableFuture.completedFuture(status),
+                response -> response >= 500, () -> null);
+    }
+
+    /**
+     * Tests that an open circuit answers from the fallback, or fails fast without one,
+     * instead of sending the request.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testOpenCircuitServesFallback() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(
+                ConfigFactory.parseString("enabled = true, failure-threshold = 2, open-duration = 1m"));
+        respond(breaker, 503);
+        respond(breaker, 503);
+        AtomicInteger sent = new AtomicInteger();
+
+        CompletionStage<Integer> result = breaker.execute("/search",
+                () -> CompletableFuture.completedFuture(sent.incrementAndGet()), response -> false, () -> 304);
+
+        assertEquals(304, (int) result.toCompletableFuture().get());
+        assertTrue(respond(breaker, 200).toCompletableFuture().isCompletedExceptionally());
+        assertEquals(0, sent.get());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state("/search"));
+        assertEquals(1, breaker.stats().get("/search").get("fallbackHits").asLong());
+    }
+
+    /**
+     * Tests that a successful probe after the open duration closes the circuit again.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testProbeClosesCircuit() {
+        CircuitBreaker breaker = new CircuitBreaker(
+                ConfigFactory.parseString("enabled = true, failure-threshold = 1, open-duration = 0ms"));
+        respond(breaker, 500);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state("/search"));
+
+        respond(breaker, 200);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state("/search"));
+        assertEquals(1, breaker.stats().get("/search").get("halfOpened").asLong());
+        assertEquals(1, breaker.stats().get("/search").get("closed").asLong());
+    }
+
+    /**
+     * Tests that failures never open a circuit unless circuit breaking is enabled.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testCircuitBreakersAreOffByDefault() {
+        CircuitBreaker breaker = new CircuitBreaker(ConfigFactory.empty());
+        for (int i = 0; i < 10; i++) {
+            respond(breaker, 503);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state("/search"));
+        assertEquals(0, breaker.stats().size());
+    }
+}
@@ -0,0 +1,58 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Test class for Hedger.
+ * This class contains unit tests for hedging slow requests with a second attempt.
+ *
+ * @author Vatsal Dadia
+ */
+public class HedgerTest {
+
+    /**
+     * Tests that a request slower than the observed latency is answered by its hedge.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testSlowRequestIsHedged() throws Exception {
+        Hedger hedger = new Hedger(ConfigFactory.parseString("enabled = true, min-samples = 1, budget-percent = 100"));
+        hedger.execute("/videos", () -> CompletableFuture.completedFuture("warm-up"));
+        CompletableFuture<String> stuck = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletionStage<String> result = hedger.execute("/videos",
+                () -> calls.incrementAndGet() == 1 ? stuck : CompletableFuture.completedFuture("hedge"));
+
+        assertEquals("hedge", result.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertEquals(1, hedger.stats().get("/videos").get("hedgeWins").asLong());
+    }
+
+    /**
+     * Tests that requests are sent once and no statistics are kept unless hedging is enabled.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testHedgingIsOffByDefault() {
+        Hedger hedger = new Hedger(ConfigFactory.empty());
+        AtomicInteger calls = new AtomicInteger();
+
+        hedger.execute("/videos", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<String>();
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals(0, hedger.stats().size());
+    }
+}
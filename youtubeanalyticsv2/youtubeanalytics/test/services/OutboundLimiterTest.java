@@ -0,0 +1,258 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import messages.Messages.WorkClass;
+import org.junit.Test;
+
+/**
+ * Test class for OutboundLimiter.
+ * This class contains unit tests for the adaptive limit on concurrent YouTube API requests and the
+ * order in which waiting requests are sent.
+ *
+ * @author Vatsal Dadia
+ */
+public class OutboundLimiterTest {
+
+    private static CompletionStage<String> submit(OutboundLimiter limiter, WorkClass workClass,
+            List<String> sent, CompletableFuture<String> response) {
+        return limiter.submit(workClass, () -> {
+            sent.add(workClass.name());
+            return response;
+        });
+    }
+
+    /**
+     * Tests that a waiting interactive request is sent before background requests queued
+     * earlier.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testInteractiveRequestsGoAheadOfBackground() throws Exception {
+        OutboundLimiter limiter = new OutboundLimiter(ConfigFactory.parseString("max-concurrent = 1"));
+        List<String> sent = new ArrayList<>();
+        CompletableFuture<String> first = new CompletableFuture<>();
+        submit(limiter, WorkClass.BACKGROUND, sent, first);
+        CompletionStage<String> background =
+                submit(limiter, WorkClass.BACKGROUND, sent, CompletableFuture.completedFuture("refresh"));
+        CompletionStage<String> interactive =
+                submit(limiter, WorkClass.INTERACTIVE, sent, CompletableFuture.completedFuture("search"));
+
+        assertEquals(List.of("BACKGROUND"), sent);
+        assertEquals(1, limiter.stats().get("background").get("waiting").asInt());
+        assertEquals(1, limiter.stats().get("interactive").get("waiting").asInt());
+
+        first.complete("poll");
+        assertEquals(List.of("BACKGROUND", "INTERACTIVE", "BACKGROUND"), sent);
+        assertEquals("search", interactive.toCompletableFuture().get());
+        assertEquals("refresh", background.toCompletableFuture().get());
+        assertEquals(0, limiter.stats().get("inFlight").asInt());
+    }
+
+    /**
+     * Tests that a user with one waiting request is served before the backlog of another
+     * user is drained.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testWaitingRequestsAreSharedFairlyBetweenUsers() throws Exception {
+        OutboundLimiter limiter = new OutboundLimiter(ConfigFactory.parseString("max-concurrent = 1"));
+        List<String> sent = new ArrayList<>();
+        CompletableFuture<String> first = new CompletableFuture<>();
+        submit(limiter, WorkClass.BACKGROUND, sent, first);
+        FairShare heavy = new FairShare("heavy", 1);
+        FairShare light = new FairShare("light", 1);
+        for (int i = 0; i < 3; i++) {
+            limiter.submit(WorkClass.BACKGROUND, heavy, 100, null, () -> {
+                sent.add("heavy");
+                return CompletableFuture.completedFuture("heavy");
+            });
+        }
+        CompletionStage<String> lightSearch = limiter.submit(WorkClass.BACKGROUND, light, 100, null, () -> {
+            sent.add("light");
+            return CompletableFuture.completedFuture("light");
+        });
+
+        assertEquals(2, limiter.stats().get("background").get("waitingUsers").asInt());
+        first.complete("poll");
+        assertEquals(List.of("BACKGROUND", "heavy", "light", "heavy", "heavy"), sent);
+        assertEquals("light", lightSearch.toCompletableFuture().get());
+        assertEquals(0, limiter.stats().get("background").get("waitingUsers").asInt());
+    }
+
+    /**
+     * Tests that a share with twice the weight gets twice as many turns while both users wait.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testHeavierShareIsServedMoreOften() {
+        OutboundLimiter limiter = new OutboundLimiter(ConfigFactory.parseString("max-concurrent = 1"));
+        List<String> sent = new ArrayList<>();
+        CompletableFuture<String> first = new CompletableFuture<>();
+        submit(limiter, WorkClass.BACKGROUND, sent, first);
+        FairShare popular = new FairShare("popular", 2);
+        FairShare single = new FairShare("single", 1);
+        for (int i = 0; i < 4; i++) {
+            limiter.submit(WorkClass.BACKGROUND, single, 1, null, () -> {
+                sent.add("single");
+                return CompletableFuture.completedFuture("single");
+            });
+            limiter.submit(WorkClass.BACKGROUND, popular, 1, null, () -> {
+                sent.add("popular");
+                return CompletableFuture.completedFuture("popular");
+            });
+        }
+
+        first.complete("poll");
+        // Tags: popular 0.5, 1, 1.5, 2 and single 1, 2, 3, 4
+        assertEquals(List.of("BACKGROUND", "popular", "single", "popular", "popular", "single", "popular",
+                "single", "single"), sent);
+    }
+
+    /**
+     * Tests that a failed request gives its slot to the next waiting request.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testFailedRequestFreesItsSlot() {
+        OutboundLimiter limiter = new OutboundLimiter(ConfigFactory.parseString("max-concurrent = 1"));
+        List<String> sent = new ArrayList<>();
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        CompletionStage<String> failed = submit(limiter, WorkClass.INTERACTIVE, sent, failing);
+        submit(limiter, WorkClass.BACKGROUND, sent, new CompletableFuture<>());
+
+        failing.completeExceptionally(new RuntimeException("503"));
+
+        assertTrue(failed.toCompletableFuture().isCompletedExceptionally());
+        assertEquals(List.of("INTERACTIVE", "BACKGROUND"), sent);
+        assertEquals(1, limiter.stats().get("inFlight").asInt());
+    }
+
+    /**
+     * Tests that latency above the tolerance and failed requests lower the limit down to
+     * its minimum.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testSlowResponsesShrinkLimit() {
+        OutboundLimiter limiter = new OutboundLimiter(ConfigFactory.parseString(
+                "max-concurrent = 64, min-concurrent = 4, initial-concurrent = 20, latency-tolerance = 2"));
+        limiter.onSample(TimeUnit.MILLISECONDS.toNanos(100), false, 10);
+        limiter.onSample(TimeUnit.MILLISECONDS.toNanos(500), false, 10);
+
+        assertEquals(18, limiter.currentLimit());
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(0, true, 10);
+        }
+        assertEquals(4, limiter.currentLimit());
+        assertEquals(101, limiter.stats().get("decreases").asLong());
+    }
+
+    /**
+     * Tests that fast responses raise the limit only while the limiter is using most of it.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testFastResponsesGrowLimitOnlyWhenBusy() {
+        OutboundLimiter limiter = new OutboundLimiter(ConfigFactory.parseString(
+                "max-concurrent = 64, min-concurrent = 4, initial-concurrent = 10"));
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(TimeUnit.MILLISECONDS.toNanos(100), false, 1);
+        }
+        assertEquals(10, limiter.currentLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(TimeUnit.MILLISECONDS.toNanos(100), false, 10);
+        }
+        assertTrue(limiter.currentLimit() > 10);
+        assertTrue(limiter.currentLimit() <= 64);
+    }
+
+    /**
+     * Tests that a request waiting longer than the maximum wait fails with a timeout
+     * without being sent.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testQueuedRequestFailsAfterMaxWait() throws Exception {
+        OutboundLimiter limiter = new OutboundLimiter(
+                ConfigFactory.parseString("max-concurrent = 1, max-wait = 10ms"));
+        List<String> sent = new ArrayList<>();
+        submit(limiter, WorkClass.BACKGROUND, sent, new CompletableFuture<>());
+        CompletionStage<String> queued = submit(limiter, WorkClass.INTERACTIVE, sent, new CompletableFuture<>());
+
+        try {
+            queued.toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("A request waiting longer than max-wait should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, sent.size());
+        assertEquals(1, limiter.stats().get("interactive").get("timedOut").asLong());
+        assertEquals(0, limiter.stats().get("interactive").get("waiting").asInt());
+    }
+
+    /**
+     * Tests that a request whose deadline passed while it waited is not sent and does not
+     * count as a failed sample.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testOverdueRequestIsNotSentAndKeepsLimit() throws Exception {
+        OutboundLimiter limiter = new OutboundLimiter(ConfigFactory.parseString(
+                "max-concurrent = 8, min-concurrent = 1, initial-concurrent = 1"));
+        List<String> sent = new ArrayList<>();
+        CompletableFuture<String> first = new CompletableFuture<>();
+        submit(limiter, WorkClass.BACKGROUND, sent, first);
+        Deadline deadline = Deadline.after(java.time.Duration.ofMillis(1));
+        CompletionStage<String> overdue = limiter.submit(WorkClass.BACKGROUND, FairShare.SHARED, 1, deadline, () -> {
+            sent.add("overdue");
+            return CompletableFuture.completedFuture("overdue");
+        });
+        Thread.sleep(5);
+
+        first.complete("poll");
+
+        assertTrue(overdue.toCompletableFuture().isCompletedExceptionally());
+        assertEquals(List.of("BACKGROUND"), sent);
+        assertEquals(0, limiter.stats().get("decreases").asLong());
+        assertEquals(1, limiter.stats().get("background").get("overdue").asLong());
+        assertEquals(0, limiter.stats().get("inFlight").asInt());
+    }
+
+    /**
+     * Tests that every request is sent right away when no limit is configured.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testUnlimitedWithoutConfiguration() {
+        OutboundLimiter limiter = new OutboundLimiter(ConfigFactory.empty());
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            submit(limiter, WorkClass.BACKGROUND, sent, new CompletableFuture<>());
+        }
+
+        assertEquals(100, sent.size());
+    }
+}
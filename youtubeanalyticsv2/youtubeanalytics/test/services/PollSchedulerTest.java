@@ -0,0 +1,202 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Test class for PollScheduler.
+ * This class contains unit tests for the timing wheel that triggers search polls and the limit on
+ * rounds in flight.
+ *
+ * @author Vatsal Dadia
+ */
+public class PollSchedulerTest {
+
+    private static PollScheduler scheduler(double jitter, int maxInFlight) {
+        return new PollScheduler(ConfigFactory.parseString(
+                "youtube.search.scheduler { tick-duration = 1s, wheel-size = 8, jitter = " + jitter
+                        + ", max-in-flight = " + maxInFlight + " }"));
+    }
+
+    private static void tick(PollScheduler scheduler, int times) {
+        for (int i = 0; i < times; i++) {
+            scheduler.tick();
+        }
+    }
+
+    /**
+     * Tests that a poll is triggered on the tick it is due and not before.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testTriggersWhenDue() {
+        PollScheduler scheduler = scheduler(0, 10);
+        List<String> fired = new ArrayList<>();
+        scheduler.schedule("cats", Duration.ofSeconds(3), () -> fired.add("cats"));
+
+        tick(scheduler, 2);
+        assertTrue(fired.isEmpty());
+        tick(scheduler, 1);
+        assertEquals(List.of("cats"), fired);
+    }
+
+    /**
+     * Tests that a poll due after more ticks than the wheel has slots waits for its lap.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testDelaysLongerThanOneLapWaitForTheirRound() {
+        PollScheduler scheduler = scheduler(0, 10);
+        List<String> fired = new ArrayList<>();
+        scheduler.schedule("cats", Duration.ofSeconds(20), () -> fired.add("cats"));
+
+        tick(scheduler, 19);
+        assertTrue(fired.isEmpty());
+        tick(scheduler, 1);
+        assertEquals(1, fired.size());
+    }
+
+    /**
+     * Tests that scheduling a query again replaces its pending poll.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testRescheduleReplacesPendingPoll() {
+        PollScheduler scheduler = scheduler(0, 10);
+        List<String> fired = new ArrayList<>();
+        scheduler.schedule("cats", Duration.ofSeconds(2), () -> fired.add("first"));
+        scheduler.schedule("cats", Duration.ofSeconds(5), () -> fired.add("second"));
+
+        tick(scheduler, 5);
+        assertEquals(List.of("second"), fired);
+        assertEquals(1, scheduler.stats().get("scheduled").asInt());
+    }
+
+    /**
+     * Tests that due polls beyond the in-flight limit wait for a released slot, and that
+     * releasing a query twice frees a single slot.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testInFlightLimitQueuesDuePolls() {
+        PollScheduler scheduler = scheduler(0, 2);
+        List<String> fired = new ArrayList<>();
+        for (String query : List.of("a", "b", "c")) {
+            scheduler.schedule(query, Duration.ofSeconds(1), () -> fired.add(query));
+        }
+
+        tick(scheduler, 1);
+        assertEquals(2, fired.size());
+        assertEquals(1, scheduler.stats().get("waiting").asInt());
+
+        scheduler.release(fired.get(0));
+        assertEquals(3, fired.size());
+        assertEquals(2, scheduler.stats().get("inFlight").asInt());
+
+        // Releasing twice frees a single slot
+        scheduler.release(fired.get(2));
+        scheduler.release(fired.get(2));
+        assertEquals(1, scheduler.stats().get("inFlight").asInt());
+    }
+
+    /**
+     * Tests that cancelling a query frees its slot for a waiting poll and removes its schedule.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testCancelReleasesSlotAndForgetsQuery() {
+        PollScheduler scheduler = scheduler(0, 1);
+        List<String> fired = new ArrayList<>();
+        scheduler.schedule("a", Duration.ofSeconds(1), () -> fired.add("a"));
+        scheduler.schedule("b", Duration.ofSeconds(1), () -> fired.add("b"));
+        tick(scheduler, 1);
+
+        assertEquals(1, fired.size());
+
+        scheduler.cancel(fired.get(0));
+        assertEquals(2, fired.size());
+        assertEquals(1, scheduler.stats().get("scheduled").asInt());
+    }
+
+    /**
+     * Tests that a slot acquired for an urgent round respects the in-flight limit and is
+     * granted ahead of waiting polls.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testUrgentAcquireWaitsAheadOfDuePolls() {
+        PollScheduler scheduler = scheduler(0, 1);
+        List<String> fired = new ArrayList<>();
+        for (String query : List.of("a", "b", "c")) {
+            scheduler.schedule(query, Duration.ofSeconds(1), () -> fired.add(query));
+        }
+        tick(scheduler, 1);
+        assertEquals(1, fired.size());
+
+        // The limit holds for acquired slots too
+        scheduler.acquire("d", true, () -> fired.add("d"));
+        assertEquals(1, fired.size());
+
+        scheduler.release(fired.get(0));
+        assertEquals("d", fired.get(1));
+        assertEquals(1, scheduler.stats().get("acquired").asInt());
+        assertEquals(2, scheduler.stats().get("waiting").asInt());
+    }
+
+    /**
+     * Tests that acquiring a slot for a query that already holds one grants it right away
+     * without taking a second slot.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testAcquireRunsRightAwayWhenQueryHoldsSlot() {
+        PollScheduler scheduler = scheduler(0, 1);
+        List<String> fired = new ArrayList<>();
+        scheduler.schedule("a", Duration.ofSeconds(1), () -> fired.add("poll"));
+        tick(scheduler, 1);
+
+        scheduler.acquire("a", false, () -> fired.add("round"));
+        assertEquals(List.of("poll", "round"), fired);
+        assertEquals(1, scheduler.stats().get("inFlight").asInt());
+    }
+
+    /**
+     * Tests that jitter spreads polls scheduled at the same moment over several ticks.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testJitterSpreadsSchedulesCreatedTogether() {
+        PollScheduler scheduler = scheduler(0.5, 1000);
+        int[] firedPerTick = new int[20];
+        int[] currentTick = { 0 };
+        for (int i = 0; i < 200; i++) {
+            scheduler.schedule("q" + i, Duration.ofSeconds(10), () -> firedPerTick[currentTick[0]]++);
+        }
+
+        for (currentTick[0] = 1; currentTick[0] < firedPerTick.length; currentTick[0]++) {
+            scheduler.tick();
+        }
+
+        int total = 0;
+        int busiest = 0;
+        for (int fired : firedPerTick) {
+            total += fired;
+            busiest = Math.max(busiest, fired);
+        }
+        assertEquals(200, total);
+        assertTrue(busiest < 100);
+    }
+}
@@ -0,0 +1,59 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test class for QueryNormalizer.
+ * This class contains unit tests for the canonical form of search queries.
+ *
+ * @author Vatsal Dadia
+ */
+public class QueryNormalizerTest {
+
+    /**
+     * Tests that case, width and whitespace variants of a query share one canonical form.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testEquivalentSpellingsShareCanonicalQuery() {
+        QueryNormalizer normalizer = new QueryNormalizer(false);
+
+        assertEquals("java streams", normalizer.normalize(" Java\tStreams "));
+        assertEquals("java", normalizer.normalize("ＪＡＶＡ"));
+        assertEquals("the java tutorial", normalizer.normalize("The Java tutorial"));
+    }
+
+    /**
+     * Tests that stopwords are only dropped when the normalizer is configured to do so.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testStopwordsAreOptional() {
+        QueryNormalizer normalizer = new QueryNormalizer(true);
+
+        assertEquals("java tutorial", normalizer.normalize("The Java tutorial"));
+        assertEquals("to be or", normalizer.normalize("To be OR"));
+    }
+
+    /**
+     * Tests that the statistics count the queries answered by an earlier canonical query.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testDedupRatio() {
+        QueryNormalizer normalizer = new QueryNormalizer(false);
+
+        normalizer.canonicalize("Java");
+        normalizer.canonicalize("java ");
+        normalizer.canonicalize("Java");
+        normalizer.canonicalize("scala");
+
+        assertEquals(1, normalizer.stats().get("deduplicated").asLong());
+        assertEquals(0.25, normalizer.stats().get("dedupRatio").asDouble(), 1e-9);
+    }
+}
@@ -0,0 +1,77 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Test class for QueryRateLimiter.
+ * This class contains unit tests for the per-user token buckets limiting new search queries.
+ *
+ * @author Vatsal Dadia
+ */
+public class QueryRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static QueryRateLimiter limiter() {
+        return new QueryRateLimiter(ConfigFactory.parseString(
+                "youtube.users.new-queries { capacity = 2, refill-interval = 10s }"));
+    }
+
+    /**
+     * Tests that a user may start a burst of queries up to the bucket capacity and is then
+     * told how long to wait.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testBurstThenThrottled() {
+        QueryRateLimiter limiter = limiter();
+
+        assertEquals(Duration.ZERO, limiter.tryAcquire("alice", 0));
+        assertEquals(Duration.ZERO, limiter.tryAcquire("alice", 0));
+        assertEquals(Duration.ofSeconds(10), limiter.tryAcquire("alice", 0));
+        assertEquals(Duration.ofSeconds(6), limiter.tryAcquire("alice", 4 * SECOND));
+        assertEquals(2, limiter.stats().get("throttled").asLong());
+    }
+
+    /**
+     * Tests that tokens come back with time but never beyond the capacity.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testTokensRefillOverTime() {
+        QueryRateLimiter limiter = limiter();
+        limiter.tryAcquire("alice", 0);
+        limiter.tryAcquire("alice", 0);
+
+        assertEquals(Duration.ZERO, limiter.tryAcquire("alice", 10 * SECOND));
+        assertFalse(limiter.tryAcquire("alice", 10 * SECOND).isZero());
+        // A bucket never holds more than its capacity
+        assertEquals(Duration.ZERO, limiter.tryAcquire("alice", 1000 * SECOND));
+        assertEquals(Duration.ZERO, limiter.tryAcquire("alice", 1000 * SECOND));
+        assertFalse(limiter.tryAcquire("alice", 1000 * SECOND).isZero());
+    }
+
+    /**
+     * Tests that a throttled user does not hold back another user.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testUsersHaveSeparateBuckets() {
+        QueryRateLimiter limiter = limiter();
+        limiter.tryAcquire("alice", 0);
+        limiter.tryAcquire("alice", 0);
+
+        assertFalse(limiter.tryAcquire("alice", 0).isZero());
+        assertEquals(Duration.ZERO, limiter.tryAcquire("bob", 0));
+        assertEquals(2, limiter.stats().get("users").asInt());
+        assertEquals(3, limiter.stats().get("admitted").asLong());
+    }
+}
@@ -0,0 +1,111 @@
+package services;
+
+import static org.junit.Assert.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import org.junit.Test;
+
+/**
+ * Test class for QuotaTracker.
+ * This class contains unit tests for the daily YouTube Data API quota accounting.
+ *
+ * @author Vatsal Dadia
+ */
+public class QuotaTrackerTest {
+
+    private static final ZoneId PACIFIC = ZoneId.of("America/Los_Angeles");
+
+    private static Clock at(int hour) {
+        Instant instant = ZonedDateTime.of(2024, 3, 1, hour, 0, 0, 0, PACIFIC).toInstant();
+        return Clock.fixed(instant, ZoneOffset.UTC);
+    }
+
+    /**
+     * Tests that a search costs 100 units and other calls one unit each.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testSearchCostsMoreThanOtherCalls() {
+        QuotaTracker quota = new QuotaTracker(1000, at(12));
+        quota.spend("/search");
+        quota.spend("/videos");
+
+        assertEquals(100, QuotaTracker.cost("/search"));
+        assertEquals(1, QuotaTracker.cost("/channels"));
+        assertEquals(101, quota.stats().get("used").asLong());
+        assertEquals(0.899, quota.remainingFraction(), 1e-9);
+    }
+
+    /**
+     * Tests that the pacing compares the share of quota spent with the share of the day gone by.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testPacingComparesSpendingWithElapsedDay() {
+        QuotaTracker quota = new QuotaTracker(1000, at(12));
+        for (int i = 0; i < 5; i++) {
+            quota.spend("/search");
+        }
+
+        assertEquals(1.0, quota.pacing(), 1e-9);
+        quota.spend("/search");
+        assertTrue(quota.pacing() > 1);
+    }
+
+    /**
+     * Tests that the spent quota is reset at midnight Pacific time.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testQuotaResetsAtPacificMidnight() {
+        Clock[] clock = { at(23) };
+        QuotaTracker quota = new QuotaTracker(1000, new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return clock[0].getZone();
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return clock[0].withZone(zone);
+            }
+
+            @Override
+            public Instant instant() {
+                return clock[0].instant();
+            }
+        });
+        quota.spend("/search");
+        assertEquals(0.9, quota.remainingFraction(), 1e-9);
+
+        clock[0] = Clock.fixed(clock[0].instant().plusSeconds(2 * 3600), ZoneOffset.UTC);
+        assertEquals(1.0, quota.remainingFraction(), 1e-9);
+    }
+
+    /**
+     * Tests that exhausting the quota reports the units that were still left, and that
+     * forfeited units count as used.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testExhaustReportsForfeitedUnits() {
+        QuotaTracker key = new QuotaTracker(1000, at(12));
+        QuotaTracker pool = new QuotaTracker(2000, at(12));
+        key.spend("/search");
+        pool.spend("/search");
+
+        pool.forfeit(key.exhaust());
+
+        assertEquals(0, key.remainingUnits());
+        assertEquals(0, key.exhaust());
+        assertEquals(1000, pool.remainingUnits());
+    }
+}
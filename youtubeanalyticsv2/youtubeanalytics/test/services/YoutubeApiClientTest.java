@@ -0,0 +1,270 @@
+package services;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import play.libs.ws.*;
+
+/**
+ * Test class for YoutubeApiClient.
+ * This class contains unit tests for conditional requests, retries within a deadline, circuit breaking
+ * and API key rotation.
+ *
+ * @author Vatsal Dadia
+ */
+public class YoutubeApiClientTest {
+
+    @Mock
+    private WSClient wsClient;
+
+    @Mock
+    private WSRequest wsRequest;
+
+    @Mock
+    private WSResponse okResponse;
+
+    @Mock
+    private WSResponse notModifiedResponse;
+
+    private YoutubeApiClient apiClient;
+    private Map<String, String> params;
+
+    /**
+     * Sets up the client on top of a mocked WSClient with a single API key.
+     *
+     * @author Vatsal Dadia
+     */
+    @Before
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        apiClient = new YoutubeApiClient(wsClient, Collections.singletonList("test-key"));
+        params = new LinkedHashMap<>();
+        params.put("part", "snippet");
+        params.put("q", "java");
+        params.put("key", "test-key");
+
+        when(wsClient.url(anyString())).thenReturn(wsRequest);
+        when(wsRequest.addQueryParameter(anyString(), anyString())).thenReturn(wsRequest);
+        when(wsRequest.addHeader(anyString(), anyString())).thenReturn(wsRequest);
+    }
+
+    /**
+     * Tests that a 304 Not Modified answer reuses the body parsed from the earlier response
+     * with the same ETag.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testNotModifiedReusesParsedBody() throws Exception {
+        ObjectNode body = new ObjectMapper().createObjectNode().put("etag", "etag-1");
+        body.putArray("items").addObject().put("title", "Test Video");
+        when(okResponse.getStatus()).thenReturn(200);
+        when(okResponse.asJson()).thenReturn(body);
+        when(okResponse.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(notModifiedResponse.getStatus()).thenReturn(304);
+        when(wsRequest.get()).thenReturn(
+                CompletableFuture.completedFuture(okResponse),
+                CompletableFuture.completedFuture(notModifiedResponse));
+
+        YoutubeApiClient.ApiResponse first = apiClient.get("/search", params).toCompletableFuture().get();
+        // Callers modify the returned tree; the remembered body must not change
+        ((ObjectNode) first.asJson().get("items").get(0)).put("title", "Modified");
+        YoutubeApiClient.ApiResponse second = apiClient.get("/search", params).toCompletableFuture().get();
+
+        assertFalse(first.notModified);
+        assertTrue(second.notModified);
+        assertEquals(200, second.status);
+        assertEquals("Test Video", second.asJson().get("items").get(0).get("title").asText());
+        verify(wsRequest).addHeader("If-None-Match", "etag-1");
+        verify(notModifiedResponse, never()).asJson();
+
+        JsonNode stats = apiClient.stats().get("/search");
+        assertEquals(2, stats.get("requests").asLong());
+        assertEquals(1, stats.get("notModified").asLong());
+    }
+
+    /**
+     * Tests that no If-None-Match header is sent for a response that had no ETag.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testResponseWithoutEtagIsNotConditional() throws Exception {
+        when(okResponse.getStatus()).thenReturn(200);
+        when(okResponse.asJson()).thenReturn(new ObjectMapper().createObjectNode());
+        when(okResponse.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(wsRequest.get()).thenReturn(CompletableFuture.completedFuture(okResponse));
+
+        apiClient.get("/videos", params).toCompletableFuture().get();
+        apiClient.get("/videos", params).toCompletableFuture().get();
+
+        verify(wsRequest, never()).addHeader(anyString(), anyString());
+    }
+
+    /**
+     * Tests that a 503 response is retried while the deadline leaves time for it.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testTransientFailureIsRetriedWithinDeadline() throws Exception {
+        WSResponse unavailable = mock(WSResponse.class);
+        when(unavailable.getStatus()).thenReturn(503);
+        when(unavailable.asJson()).thenReturn(new ObjectMapper().createObjectNode());
+        when(unavailable.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(okResponse.getStatus()).thenReturn(200);
+        when(okResponse.asJson()).thenReturn(new ObjectMapper().createObjectNode());
+        when(okResponse.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(wsRequest.get()).thenReturn(
+                CompletableFuture.completedFuture(unavailable),
+                CompletableFuture.completedFuture(okResponse));
+
+        YoutubeApiClient.ApiResponse response = apiClient
+                .get("/videos", params, Deadline.after(Duration.ofSeconds(10)))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(200, response.status);
+        verify(wsRequest, times(2)).get();
+        assertEquals(1, apiClient.stats().get("/videos").get("retries").asLong());
+    }
+
+    /**
+     * Tests that a failed request is not retried when the deadline is too close.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testNoRetryWithoutTimeLeft() throws Exception {
+        WSResponse unavailable = mock(WSResponse.class);
+        when(unavailable.getStatus()).thenReturn(503);
+        when(unavailable.asJson()).thenReturn(new ObjectMapper().createObjectNode());
+        when(unavailable.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(wsRequest.get()).thenReturn(CompletableFuture.completedFuture(unavailable));
+
+        YoutubeApiClient.ApiResponse response = apiClient
+                .get("/videos", params, Deadline.after(Duration.ofMillis(50)))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(503, response.status);
+        verify(wsRequest, times(1)).get();
+    }
+
+    /**
+     * Tests that a request whose deadline has passed fails with a timeout without being sent.
+     *
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testOverdueDeadlineFailsWithoutRequest() {
+        try {
+            apiClient.get("/videos", params, Deadline.after(Duration.ZERO)).toCompletableFuture().join();
+            fail("Expected the request to fail");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        verify(wsRequest, never()).get();
+    }
+
+    /**
+     * Tests that an open circuit serves the last good response of a request, fails fast
+     * for requests without one, and never retries.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testOpenCircuitServesLastGoodResponseWithoutRetrying() throws Exception {
+        apiClient = new YoutubeApiClient(wsClient, ConfigFactory.parseString(
+                "youtube.api.circuit-breaker { enabled = true, failure-threshold = 1, open-duration = 1m }\n"
+                        + "youtube.api.keys = [\"test-key\"]"));
+        ObjectNode body = new ObjectMapper().createObjectNode();
+        body.putArray("items").addObject().put("title", "Cached");
+        WSResponse unavailable = mock(WSResponse.class);
+        when(unavailable.getStatus()).thenReturn(503);
+        when(unavailable.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(okResponse.getStatus()).thenReturn(200);
+        when(okResponse.asJson()).thenReturn(body);
+        when(okResponse.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(wsRequest.get()).thenReturn(
+                CompletableFuture.completedFuture(okResponse),
+                CompletableFuture.completedFuture(unavailable));
+
+        apiClient.get("/search", params).toCompletableFuture().get();
+        assertEquals(503, apiClient.get("/search", params).toCompletableFuture().get().status);
+        YoutubeApiClient.ApiResponse fallback = apiClient.get("/search", params).toCompletableFuture().get();
+        params.put("q", "scala");
+        try {
+            apiClient.get("/search", params, Deadline.after(Duration.ofSeconds(5))).toCompletableFuture().join();
+            fail("Expected the request to fail fast");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof CircuitBreaker.CircuitOpenException);
+        }
+
+        assertTrue(fallback.notModified);
+        assertEquals("Cached", fallback.body.get("items").get(0).get("title").asText());
+        verify(wsRequest, times(2)).get();
+        JsonNode circuit = apiClient.stats().get("circuitBreakers").get("/search");
+        assertEquals("OPEN", circuit.get("state").asText());
+        assertEquals(1, circuit.get("fallbackHits").asLong());
+        assertEquals(1, circuit.get("rejected").asLong());
+        assertEquals(0, apiClient.stats().get("/search").get("retries").asLong());
+    }
+
+    /**
+     * Tests that a key reported as out of quota is quarantined and the request is sent again
+     * with another key.
+     *
+     * @throws Exception if an error occurs during the test.
+     * @author Vatsal Dadia
+     */
+    @Test
+    public void testQuotaExceededKeyIsQuarantinedAndRequestResent() throws Exception {
+        apiClient = new YoutubeApiClient(wsClient,
+                ConfigFactory.parseString("youtube.api.keys = [\"key-aaaa\", \"key-bbbb\"]"));
+        WSResponse quotaExceeded = mock(WSResponse.class);
+        when(quotaExceeded.getStatus()).thenReturn(403);
+        when(quotaExceeded.asJson()).thenReturn(new ObjectMapper()
+                .readTree("{\"error\":{\"errors\":[{\"reason\":\"quotaExceeded\"}]}}"));
+        when(quotaExceeded.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(okResponse.getStatus()).thenReturn(200);
+        when(okResponse.asJson()).thenReturn(new ObjectMapper().createObjectNode());
+        when(okResponse.getSingleHeader("ETag")).thenReturn(Optional.empty());
+        when(wsRequest.get()).thenReturn(
+                CompletableFuture.completedFuture(quotaExceeded),
+                CompletableFuture.completedFuture(okResponse));
+
+        YoutubeApiClient.ApiResponse response = apiClient.get("/search", params).toCompletableFuture().get();
+
+        assertEquals(200, response.status);
+        verify(wsRequest, times(2)).get();
+        verify(wsRequest, never()).addQueryParameter("key", "test-key");
+        JsonNode keys = apiClient.stats().get("keys");
+        assertEquals(1, keys.get("...aaaa").get("quarantines").asLong() + keys.get("...bbbb").get("quarantines").asLong());
+        assertEquals(1, apiClient.stats().get("/search").get("quotaExceeded").asLong());
+        // The quarantined key's 9,900 unspent units and both searches are gone from the pool
+        assertEquals(0.495, apiClient.quota().remainingFraction(), 0.0001);
+    }
+}